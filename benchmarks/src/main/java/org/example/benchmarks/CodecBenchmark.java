@@ -0,0 +1,75 @@
+package org.example.benchmarks;
+
+import org.example.model.CommandType;
+import org.example.model.FileCommand;
+import org.example.protocol.BinaryCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+// FileCommand encode/decode: Java serialization the way a session uses it against BinaryCodec.
+// Setup prints the bytes each format puts on the wire per message at every contentSize
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    @Param({"0", "100", "4096", "65536"})
+    private int contentSize;
+
+    private FileCommand command;
+    private ByteArrayOutputStream javaBuffer;
+    private ObjectOutputStream javaOut;
+    private byte[] javaHeader;
+    private byte[] javaMessage;
+    private byte[] binaryFrame;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder content = new StringBuilder(contentSize);
+        for (int i = 0; i < contentSize; i++) {
+            content.append((char) ('a' + i % 26));
+        }
+        command = new FileCommand(CommandType.UPDATE, "report.txt", "development", content.toString(), "mahmoud");
+        command.setRequestId(12345);
+
+        javaBuffer = new ByteArrayOutputStream();
+        javaOut = new ObjectOutputStream(javaBuffer);
+        javaHeader = javaBuffer.toByteArray();
+        javaMessage = javaEncode();
+        binaryFrame = BinaryCodec.encodeCommand(command);
+
+        //Both counted the way a session sends them: java without the one-off stream header, binary with its length prefix
+        System.out.printf("%ncontentSize=%d bytes/msg: java=%d binary=%d binary+deflate=%d%n", contentSize,
+                javaMessage.length, binaryFrame.length + 4, BinaryCodec.encodeCommand(command, true).length + 4);
+    }
+
+    //One stream per session, reset after every message like JavaMessageChannel does
+    @Benchmark
+    public byte[] javaEncode() throws IOException {
+        javaBuffer.reset();
+        javaOut.writeObject(command);
+        javaOut.reset();
+        javaOut.flush();
+        return javaBuffer.toByteArray();
+    }
+
+    @Benchmark
+    public Object javaDecode() throws Exception {
+        InputStream in = new SequenceInputStream(new ByteArrayInputStream(javaHeader), new ByteArrayInputStream(javaMessage));
+        return new ObjectInputStream(in).readObject();
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return BinaryCodec.encodeCommand(command);
+    }
+
+    @Benchmark
+    public FileCommand binaryDecode() throws IOException {
+        return BinaryCodec.decodeCommand(binaryFrame);
+    }
+}
@@ -0,0 +1,80 @@
+package org.example.benchmarks;
+
+import org.example.node.FlatLayout;
+import org.example.node.VersionedStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+ Node storage hot path: versioned writes and lock-free reads of VersionedStore at several file
+ sizes, next to the shared-FileLock read the node used before versioning as a baseline.
+ Versions expire immediately in the forked JVM and are collected after every iteration.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dversions.retentionMinutes=0")
+@State(Scope.Benchmark)
+public class StorageBenchmark {
+    @Param({"1024", "65536", "1048576"})
+    private int fileSize;
+
+    private Path root;
+    private VersionedStore store;
+    private String content;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("storage-bench");
+        store = new VersionedStore(new FlatLayout(root));
+        StringBuilder builder = new StringBuilder(fileSize);
+        for (int i = 0; i < fileSize; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+        content = builder.toString();
+        store.write("read.txt", content);
+    }
+
+    @TearDown(Level.Iteration)
+    public void collectVersions() {
+        store.collectGarbage();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        return store.write("write.txt", content);
+    }
+
+    @Benchmark
+    public String read() throws IOException {
+        return store.read("read.txt");
+    }
+
+    @Benchmark
+    public String readWithSharedLock() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(root.resolve("read.txt").toFile(), "r");
+             FileChannel channel = raf.getChannel();
+             FileLock lock = channel.lock(0L, Long.MAX_VALUE, true)) {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            return new String(bytes);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.example.benchmarks;
+
+import org.example.node.SyncPlanner;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Diffing a peer's sync list against the local index, half of the peer's files are missing locally
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SyncPlannerBenchmark {
+    @Param({"1000", "100000"})
+    private int files;
+
+    private String[] peerFiles;
+    private Set<String> local;
+
+    @Setup
+    public void setUp() {
+        peerFiles = new String[files];
+        local = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < files; i++) {
+            peerFiles[i] = "file-" + i + ".txt";
+            if (i % 2 == 0) local.add(peerFiles[i]);
+        }
+    }
+
+    @Benchmark
+    public List<String> missing() {
+        return SyncPlanner.missing(peerFiles, local::contains);
+    }
+}
@@ -0,0 +1,94 @@
+package org.example.benchmarks;
+
+import com.google.gson.Gson;
+import org.example.model.User;
+import org.example.repository.UserRepository;
+import org.example.service.JwtService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Loading the user snapshot and validating users by token, name and signed access token
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserLookupBenchmark {
+    @Param({"1000", "100000"})
+    private int users;
+
+    private Path directory;
+    private Path snapshot;
+    private UserRepository repository;
+    private JwtService jwtService;
+    private String[] tokens;
+    private String[] names;
+    private String[] accessTokens;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("user-bench");
+        snapshot = directory.resolve("users.json");
+        Map<String, User> generated = new HashMap<>();
+        tokens = new String[users];
+        names = new String[users];
+        for (int i = 0; i < users; i++) {
+            tokens[i] = "token-" + i;
+            names[i] = "user" + i;
+            generated.put(tokens[i], new User(names[i], "development", "employee", tokens[i]));
+        }
+        try (Writer writer = Files.newBufferedWriter(snapshot, StandardCharsets.UTF_8)) {
+            new Gson().toJson(generated, writer);
+        }
+
+        repository = new UserRepository(snapshot.toString());
+        jwtService = new JwtService();
+        accessTokens = new String[Math.min(users, 1000)];
+        for (int i = 0; i < accessTokens.length; i++) {
+            accessTokens[i] = jwtService.issue(generated.get(tokens[i]));
+            jwtService.verify(accessTokens[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        repository.close();
+        Files.deleteIfExists(snapshot);
+        Files.deleteIfExists(directory.resolve("users.lock"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int loadSnapshot() throws IOException {
+        try (UserRepository loaded = new UserRepository(snapshot.toString())) {
+            return loaded.getAllUsers().size();
+        }
+    }
+
+    @Benchmark
+    public User lookupByToken() {
+        return repository.getUserByToken(tokens[ThreadLocalRandom.current().nextInt(users)]);
+    }
+
+    @Benchmark
+    public User lookupByUsername() {
+        return repository.getUserByUsername(names[ThreadLocalRandom.current().nextInt(users)]);
+    }
+
+    //Every token is verified once in setUp, this is the cached steady state of connected clients
+    @Benchmark
+    public User verifyAccessToken() {
+        return jwtService.verify(accessTokens[ThreadLocalRandom.current().nextInt(accessTokens.length)]);
+    }
+}
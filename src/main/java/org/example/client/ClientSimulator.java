@@ -2,12 +2,12 @@ package org.example.client;
 
 import org.example.model.CommandType;
 import org.example.model.FileCommand;
+import org.example.model.FileListPage;
 import org.example.model.User;
 import org.example.repository.UserRepository;
 import org.example.service.AuthService;
 
 import java.io.*;
-import java.net.Socket;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.UUID;
@@ -16,6 +16,10 @@ public class ClientSimulator{
     private static final Scanner scanner = new Scanner(System.in);
     private static final UserRepository userRepository = new UserRepository();
     private static final AuthService authService = new AuthService(userRepository);
+    private static CoordinatorConnection connection;
+    private static String accessToken;
+    private static String currentUsername;
+    private static final int VIEW_ALL_PAGE_SIZE = 20;
 
     public static void main(String[] args) {
         System.out.println("Distributed System Client Interface\n");
@@ -39,22 +43,35 @@ public class ClientSimulator{
             }
         }
 
+        accessToken = requestAccessToken(currentUser);
+        if (accessToken == null) {
+            closeConnection();
+            return;
+        }
+        currentUsername = currentUser.getUsername();
+
         // Main command loop
         boolean running = true;
         while (running) {
-            System.out.println("\nAvailable Commands: ADD, UPDATE, DELETE, VIEW, EXIT");
+            System.out.println("\nAvailable Commands: ADD, UPDATE, DELETE, VIEW, VIEW_ALL, SEARCH, EXIT");
             System.out.print("Enter command: ");
             String cmd = scanner.nextLine().toUpperCase();
 
             if (cmd.equals("EXIT")) {
                 System.out.println("Exiting client simulation.");
+                closeConnection();
                 break;
             }
 
             try {
                 CommandType type = CommandType.valueOf(cmd);
 
-                System.out.print("Enter file name: ");
+                if (type == CommandType.VIEW_ALL) {
+                    handleViewAll();
+                    continue;
+                }
+
+                System.out.print(type == CommandType.SEARCH ? "Enter search text (end with * for a prefix search): " : "Enter file name: ");
                 String fileName = scanner.nextLine();
 
                 String content = "";
@@ -63,20 +80,25 @@ public class ClientSimulator{
                     content = scanner.nextLine();
                 }
 
-                String department = (type == CommandType.VIEW || type == CommandType.VIEW_ALL) ? "" : currentUser.getDepartment();
+                long version = 0;
+                if (type == CommandType.VIEW) {
+                    System.out.print("Enter version (empty for latest): ");
+                    String versionText = scanner.nextLine().trim();
+                    version = versionText.isEmpty() ? 0 : Long.parseLong(versionText);
+                }
 
-                FileCommand command = new FileCommand(type, fileName, department, content, currentUser.getUsername());
+                String department = (type == CommandType.VIEW || type == CommandType.VIEW_ALL || type == CommandType.SEARCH) ? "" : currentUser.getDepartment();
 
-                try (Socket socket = new Socket("localhost", 6000);
-                     ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-                     ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
+                FileCommand command = new FileCommand(type, fileName, department, content, currentUser.getUsername());
+                command.setAuthToken(accessToken);
+                command.setVersion(version);
 
-                    out.writeObject(command);
-                    String result = (String) in.readObject();
+                try {
+                    Object result = getConnection().request(command);
                     System.out.println("\nResponse from Coordinator:\n" + result);
-
-                } catch (IOException | ClassNotFoundException e) {
+                } catch (IOException e) {
                     System.out.println("Error communicating with coordinator: " + e.getMessage());
+                    closeConnection();
                 }
 
             } catch (IllegalArgumentException e) {
@@ -85,6 +107,71 @@ public class ClientSimulator{
         }
     }
 
+    //The coordinator signs access tokens, the client only ever holds its login token and the result
+    private static String requestAccessToken(User user) {
+        try {
+            String token = getConnection().login(user);
+            if (token == null) {
+                System.out.println("The coordinator does not know this user.");
+            }
+            return token;
+        } catch (IOException e) {
+            System.out.println("Login failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    //Page through the cluster listing until the user stops or the listing ends
+    private static void handleViewAll() {
+        System.out.print("Enter name prefix (empty for all files): ");
+        String prefix = scanner.nextLine();
+        String cursor = null;
+
+        while (true) {
+            FileCommand command = new FileCommand(CommandType.VIEW_ALL, prefix, "", "", currentUsername);
+            command.setAuthToken(accessToken);
+            command.setCursor(cursor);
+            command.setLimit(VIEW_ALL_PAGE_SIZE);
+
+            Object result;
+            try {
+                result = getConnection().request(command);
+            } catch (IOException e) {
+                System.out.println("Error communicating with coordinator: " + e.getMessage());
+                closeConnection();
+                return;
+            }
+
+            System.out.println("\nResponse from Coordinator:\n" + result);
+            if (!(result instanceof FileListPage) || ((FileListPage) result).getNextCursor() == null) {
+                return;
+            }
+            System.out.print("Show next page? (y/n): ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                return;
+            }
+            cursor = ((FileListPage) result).getNextCursor();
+        }
+    }
+
+    //Reuse one session for every command, reconnect (possibly to another coordinator) only after the previous one failed
+    private static CoordinatorConnection getConnection() throws IOException {
+        if (connection == null || !connection.isOpen()) {
+            connection = CoordinatorConnection.connectAny(CoordinatorConnection.configuredAddresses());
+        }
+        return connection;
+    }
+
+    private static void closeConnection() {
+        if (connection == null) return;
+        try {
+            connection.close();
+        } catch (IOException e) {
+            System.out.println("Error closing coordinator connection: " + e.getMessage());
+        }
+        connection = null;
+    }
+
     private static User handleRegister() {
         System.out.print("Enter manager token to register: ");
         String token = scanner.nextLine();
@@ -0,0 +1,186 @@
+package org.example.client;
+
+import org.example.model.CommandResponse;
+import org.example.model.CommandType;
+import org.example.model.FileCommand;
+import org.example.model.User;
+import org.example.protocol.MessageChannel;
+import org.example.protocol.MessageChannels;
+import org.example.protocol.WireFormat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Long-lived session with the coordinator, many requests share one socket and may be in flight together.
+   A request without a response after -Dclient.requestTimeoutSeconds (default 30) fails, and once the
+   reader stops every pending and later request fails instead of waiting for a response that can't come */
+public class CoordinatorConnection implements Closeable {
+    private static final long REQUEST_TIMEOUT_SECONDS = Long.getLong("client.requestTimeoutSeconds", 30);
+
+    private final Socket socket;
+    private final MessageChannel channel;
+    private final Map<Long, CompletableFuture<Object>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong nextRequestId = new AtomicLong(1);
+    private volatile boolean closed;
+
+    public CoordinatorConnection(String host, int port) throws IOException {
+        this(host, port, WireFormat.fromSystemProperty());
+    }
+
+    //Coordinators from -Dcoordinators as host:port,host:port, localhost:6000 when unset
+    public static List<InetSocketAddress> configuredAddresses() {
+        return parseAddresses(System.getProperty("coordinators", "localhost:6000"));
+    }
+
+    public static List<InetSocketAddress> parseAddresses(String list) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String address : list.split(",")) {
+            String trimmed = address.trim();
+            if (trimmed.isEmpty()) continue;
+            int colon = trimmed.lastIndexOf(':');
+            addresses.add(colon < 0
+                    ? InetSocketAddress.createUnresolved(trimmed, 6000)
+                    : InetSocketAddress.createUnresolved(trimmed.substring(0, colon), Integer.parseInt(trimmed.substring(colon + 1))));
+        }
+        return addresses;
+    }
+
+    //Start at a random coordinator so clients spread out, move on to the next one while connecting fails
+    public static CoordinatorConnection connectAny(List<InetSocketAddress> addresses) throws IOException {
+        if (addresses.isEmpty()) throw new IOException("No coordinator addresses configured");
+        int first = ThreadLocalRandom.current().nextInt(addresses.size());
+        IOException failure = null;
+        for (int i = 0; i < addresses.size(); i++) {
+            InetSocketAddress address = addresses.get((first + i) % addresses.size());
+            try {
+                return new CoordinatorConnection(address.getHostString(), address.getPort());
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    public CoordinatorConnection(String host, int port, WireFormat format) throws IOException {
+        this.socket = new Socket(host, port);
+        this.socket.setTcpNoDelay(true);
+        this.channel = MessageChannels.connect(socket, format);
+
+        Thread reader = new Thread(this::readResponses, "coordinator-connection-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    //Send the command without waiting, the future completes when its response arrives
+    public CompletableFuture<Object> send(FileCommand command) {
+        long requestId = nextRequestId.getAndIncrement();
+        command.setRequestId(requestId);
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new IOException("Connection to coordinator is closed"));
+            return future;
+        }
+        pending.put(requestId, future);
+        future.orTimeout(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS).whenComplete((result, error) -> pending.remove(requestId));
+        //The reader may have failed everything pending between the check above and the put
+        if (closed && pending.remove(requestId) != null) {
+            future.completeExceptionally(new IOException("Connection to coordinator is closed"));
+            return future;
+        }
+
+        try {
+            synchronized (channel) {
+                channel.writeCommand(command);
+            }
+        } catch (IOException e) {
+            pending.remove(requestId);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    //Blocking helper for callers that only have one request at a time
+    public Object request(FileCommand command) throws IOException {
+        try {
+            return send(command).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for coordinator", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw new IOException("No response from coordinator within " + REQUEST_TIMEOUT_SECONDS + " seconds");
+            }
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    //Trades the user's login token for a signed access token, null when the coordinator doesn't know the user, throws when it couldn't answer
+    public String login(User user) throws IOException {
+        FileCommand command = new FileCommand(CommandType.LOGIN, null, null, null, user.getUsername());
+        command.setAuthToken(user.getToken());
+        Object result = request(command);
+        return result instanceof String ? (String) result : null;
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    //Whatever ends the reader, unreadable data included, closes the session for every caller
+    private void readResponses() {
+        IOException failure = new IOException("Connection to coordinator is closed");
+        try {
+            while (!closed) {
+                CommandResponse response = channel.readResponse();
+                CompletableFuture<Object> future = pending.remove(response.getRequestId());
+                if (future == null) continue;
+                if (response.isFailed()) {
+                    future.completeExceptionally(new IOException(String.valueOf(response.getResult())));
+                } else {
+                    future.complete(response.getResult());
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = new IOException("Unreadable response from coordinator: " + e, e);
+        } finally {
+            failPending(failure);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //closing anyway
+            }
+        }
+    }
+
+    private void failPending(IOException cause) {
+        closed = true;
+        for (Long requestId : pending.keySet()) {
+            CompletableFuture<Object> future = pending.remove(requestId);
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        socket.close();
+    }
+}
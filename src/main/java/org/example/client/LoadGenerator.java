@@ -0,0 +1,413 @@
+package org.example.client;
+
+import com.google.gson.GsonBuilder;
+import org.example.metrics.Histogram;
+import org.example.model.CommandType;
+import org.example.model.FileCommand;
+import org.example.model.User;
+import org.example.repository.UserRepository;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ Drives the coordinator with a scripted workload instead of typed commands. Every option is a
+ system property:
+   load.host / load.port         coordinator address (localhost:6000)
+   load.coordinators             several coordinators as host:port,..., connections are spread over them
+   load.connections              sessions shared by the sender threads (4)
+   load.threads                  sender threads (8)
+   load.rate                     target ops/s over all threads, 0 runs closed loop (1000)
+   load.duration / load.warmup   measured and warm-up seconds (30 / 5)
+   load.readRatio                share of VIEW among all commands (0.8)
+   load.crossDepartmentViews     share of VIEWs for another department's files (0.2)
+   load.keys                     files per department (1000)
+   load.zipf                     Zipf exponent of key popularity, 0 is uniform (0.99)
+   load.sizes                    file size distribution as bytes:weight,... (1024:70,65536:25,1048576:5)
+   load.maxInFlight              cap on outstanding requests (10000)
+   load.preload                  write every key once before starting (true)
+   load.report                   JSON report path (load-report.json)
+   load.departments              departments with nodes, users of others are ignored (development,qa,design)
+ In open loop a command's latency is measured from when it was due to be sent, so a stalled
+ coordinator shows up as queueing delay instead of silently lowering the send rate
+ (coordinated omission). The uncorrected latency from the actual send is reported next to it.
+ Users and access tokens come from the local user repository, like ClientSimulator.
+ */
+public class LoadGenerator {
+    private static final String HOST = System.getProperty("load.host", "localhost");
+    private static final int PORT = Integer.getInteger("load.port", 6000);
+    private static final List<InetSocketAddress> COORDINATORS = CoordinatorConnection.parseAddresses(
+            System.getProperty("load.coordinators", HOST + ":" + PORT));
+    private static final int CONNECTIONS = Integer.getInteger("load.connections", 4);
+    private static final int THREADS = Integer.getInteger("load.threads", 8);
+    private static final double RATE = Double.parseDouble(System.getProperty("load.rate", "1000"));
+    private static final int DURATION_SECONDS = Integer.getInteger("load.duration", 30);
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmup", 5);
+    private static final double READ_RATIO = Double.parseDouble(System.getProperty("load.readRatio", "0.8"));
+    private static final double CROSS_DEPARTMENT_VIEWS = Double.parseDouble(System.getProperty("load.crossDepartmentViews", "0.2"));
+    private static final int KEYS = Integer.getInteger("load.keys", 1000);
+    private static final double ZIPF = Double.parseDouble(System.getProperty("load.zipf", "0.99"));
+    private static final String SIZES = System.getProperty("load.sizes", "1024:70,65536:25,1048576:5");
+    private static final int MAX_IN_FLIGHT = Integer.getInteger("load.maxInFlight", 10_000);
+    private static final boolean PRELOAD = Boolean.parseBoolean(System.getProperty("load.preload", "true"));
+    private static final String REPORT = System.getProperty("load.report", "load-report.json");
+    private static final List<String> DEPARTMENTS = Arrays.asList(
+            System.getProperty("load.departments", "development,qa,design").toLowerCase().split(","));
+
+    private final List<CoordinatorConnection> connections = new ArrayList<>();
+    private final Map<String, List<Session>> sessionsByDepartment = new HashMap<>();
+    private final List<String> departments = new ArrayList<>();
+    private final ZipfSampler keys = new ZipfSampler(KEYS, ZIPF);
+    private final SizeSampler sizes = SizeSampler.parse(SIZES);
+    private final Map<Integer, String> contentBySize = new ConcurrentHashMap<>();
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+    private final Stats reads = new Stats();
+    private final Stats writes = new Stats();
+    private volatile long measureFrom;
+    private volatile long measureUntil;
+
+    //A user with a token, bound to one of the connections
+    private static class Session {
+        private final User user;
+        private final String accessToken;
+        private final CoordinatorConnection connection;
+
+        Session(User user, String accessToken, CoordinatorConnection connection) {
+            this.user = user;
+            this.accessToken = accessToken;
+            this.connection = connection;
+        }
+    }
+
+    private static class Stats {
+        private final Histogram corrected = new Histogram();
+        private final Histogram uncorrected = new Histogram();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            generator.connect();
+            if (PRELOAD) generator.preload();
+            Map<String, Object> report = generator.run();
+            System.out.println(textReport(report));
+            try (Writer writer = Files.newBufferedWriter(Paths.get(REPORT), StandardCharsets.UTF_8)) {
+                new GsonBuilder().setPrettyPrinting().create().toJson(report, writer);
+            }
+            System.out.println("JSON report written to " + REPORT);
+        } finally {
+            generator.close();
+        }
+    }
+
+    private void connect() throws IOException {
+        for (int i = 0; i < CONNECTIONS; i++) {
+            InetSocketAddress coordinator = COORDINATORS.get(i % COORDINATORS.size());
+            connections.add(new CoordinatorConnection(coordinator.getHostString(), coordinator.getPort()));
+        }
+
+        try (UserRepository repository = new UserRepository()) {
+            int next = 0;
+            for (User user : repository.getAllUsers().values()) {
+                String department = user.getDepartment().toLowerCase();
+                if (!DEPARTMENTS.contains(department)) continue;
+                CoordinatorConnection connection = connections.get(next++ % CONNECTIONS);
+                String accessToken = connection.login(user);
+                if (accessToken == null) {
+                    throw new IllegalStateException("Coordinator refused the login of " + user.getUsername());
+                }
+                Session session = new Session(user, accessToken, connection);
+                sessionsByDepartment.computeIfAbsent(department, d -> new ArrayList<>()).add(session);
+            }
+            System.out.printf("Load generator: %d users in %s over %d connections%n",
+                    next, new TreeSet<>(sessionsByDepartment.keySet()), CONNECTIONS);
+        }
+        departments.addAll(sessionsByDepartment.keySet());
+        Collections.sort(departments);
+        if (departments.isEmpty()) {
+            throw new IllegalStateException("No users in " + DEPARTMENTS + ", register one with ClientSimulator first");
+        }
+    }
+
+    //Make every key exist so VIEWs measure reads rather than misses, backing off while rate limited
+    private void preload() throws Exception {
+        System.out.printf("Preloading %d files per department...%n", KEYS);
+        Random random = new Random(1);
+        for (String department : departments) {
+            for (int key = 0; key < KEYS; key++) {
+                FileCommand add = null;
+                Object result;
+                do {
+                    if (add != null) Thread.sleep(50);
+                    Session session = pick(sessionsByDepartment.get(department), random);
+                    add = command(session, CommandType.ADD, department, fileName(department, key), content(sizes.sample(random)));
+                    result = session.connection.request(add);
+                } while (result instanceof String && ((String) result).startsWith("Rate limit exceeded"));
+            }
+        }
+    }
+
+    private Map<String, Object> run() throws InterruptedException {
+        long start = System.nanoTime();
+        measureFrom = start + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+        measureUntil = measureFrom + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+        System.out.printf("Running %s for %ds after %ds warm-up with %d threads%n",
+                RATE > 0 ? "open loop at " + RATE + " ops/s" : "closed loop", DURATION_SECONDS, WARMUP_SECONDS, THREADS);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            int index = i;
+            Thread thread = new Thread(() -> sendLoop(index, start), "load-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        //Let the last responses arrive before reporting
+        inFlight.tryAcquire(MAX_IN_FLIGHT, 30, TimeUnit.SECONDS);
+        return report();
+    }
+
+    private void sendLoop(int index, long start) {
+        Random random = new Random(index * 7919L + 17);
+        long interval = RATE > 0 ? (long) (1e9 * THREADS / RATE) : 0;
+        //Threads are staggered so the combined schedule is evenly spaced
+        long intended = start + interval * index / Math.max(1, THREADS);
+
+        while (intended < measureUntil) {
+            if (interval > 0) {
+                long wait = intended - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+            } else {
+                intended = System.nanoTime();
+            }
+
+            CompletableFuture<Object> response = sendOne(random, intended);
+            if (interval == 0) {
+                try {
+                    response.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    //counted as an error when the future completed
+                }
+            }
+            intended += interval;
+        }
+    }
+
+    private CompletableFuture<Object> sendOne(Random random, long intended) {
+        boolean read = random.nextDouble() < READ_RATIO;
+        String ownDepartment = departments.get(random.nextInt(departments.size()));
+        Session session = pick(sessionsByDepartment.get(ownDepartment), random);
+
+        FileCommand command;
+        if (read) {
+            String target = ownDepartment;
+            if (departments.size() > 1 && random.nextDouble() < CROSS_DEPARTMENT_VIEWS) {
+                while (target.equals(ownDepartment)) {
+                    target = departments.get(random.nextInt(departments.size()));
+                }
+            }
+            command = command(session, CommandType.VIEW, "", fileName(target, keys.sample(random)), "");
+        } else {
+            command = command(session, CommandType.UPDATE, ownDepartment, fileName(ownDepartment, keys.sample(random)),
+                    content(sizes.sample(random)));
+        }
+
+        Stats stats = read ? reads : writes;
+        inFlight.acquireUninterruptibly();
+        long sent = System.nanoTime();
+        CompletableFuture<Object> response = session.connection.send(command);
+        response.whenComplete((result, error) -> {
+            long done = System.nanoTime();
+            inFlight.release();
+            if (intended < measureFrom) return;
+            if (error != null) {
+                stats.errors.increment();
+            } else if (isRejection(result)) {
+                stats.rejected.increment();
+            } else {
+                stats.corrected.record(done - intended);
+                stats.uncorrected.record(done - sent);
+            }
+        });
+        return response;
+    }
+
+    //Answers that mean the command was refused or failed rather than served
+    private static boolean isRejection(Object result) {
+        if (!(result instanceof String)) return false;
+        String message = (String) result;
+        return message.startsWith("Rate limit exceeded") || message.startsWith("Coordinator busy")
+                || message.startsWith("Error processing command") || message.startsWith("Access denied")
+                || message.startsWith("Missing, invalid or expired access token") || message.startsWith("VIEW request queued")
+                || message.startsWith("Node operation failed") || message.endsWith("is busy, try again later");
+    }
+
+    private static FileCommand command(Session session, CommandType type, String department, String fileName, String content) {
+        FileCommand command = new FileCommand(type, fileName, department, content, session.user.getUsername());
+        command.setAuthToken(session.accessToken);
+        return command;
+    }
+
+    private static String fileName(String department, int key) {
+        return "load-" + department + "-" + key + ".txt";
+    }
+
+    private String content(int size) {
+        return contentBySize.computeIfAbsent(size, s -> {
+            StringBuilder content = new StringBuilder(s);
+            for (int i = 0; i < s; i++) {
+                content.append((char) ('a' + i % 26));
+            }
+            return content.toString();
+        });
+    }
+
+    private static <T> T pick(List<T> items, Random random) {
+        return items.get(random.nextInt(items.size()));
+    }
+
+    private Map<String, Object> report() {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("connections", CONNECTIONS);
+        config.put("threads", THREADS);
+        config.put("targetRate", RATE);
+        config.put("durationSeconds", DURATION_SECONDS);
+        config.put("warmupSeconds", WARMUP_SECONDS);
+        config.put("readRatio", READ_RATIO);
+        config.put("crossDepartmentViews", CROSS_DEPARTMENT_VIEWS);
+        config.put("keysPerDepartment", KEYS);
+        config.put("zipf", ZIPF);
+        config.put("sizes", SIZES);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("config", config);
+        report.put("read", section(reads));
+        report.put("write", section(writes));
+        long served = reads.corrected.count() + writes.corrected.count();
+        report.put("throughputOpsPerSecond", served / (double) DURATION_SECONDS);
+        return report;
+    }
+
+    private static Map<String, Object> section(Stats stats) {
+        Map<String, Object> section = new LinkedHashMap<>();
+        section.put("served", stats.corrected.count());
+        section.put("rejected", stats.rejected.sum());
+        section.put("errors", stats.errors.sum());
+        section.put("latencyMillis", percentiles(stats.corrected));
+        section.put("uncorrectedLatencyMillis", percentiles(stats.uncorrected));
+        return section;
+    }
+
+    private static Map<String, Double> percentiles(Histogram histogram) {
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        for (double percentile : new double[]{50, 90, 99, 99.9, 100}) {
+            percentiles.put("p" + (percentile == Math.rint(percentile) ? String.valueOf((int) percentile) : String.valueOf(percentile)),
+                    histogram.percentileNanos(percentile) / 1e6);
+        }
+        percentiles.put("mean", histogram.count() == 0 ? 0 : histogram.sumNanos() / 1e6 / histogram.count());
+        return percentiles;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String textReport(Map<String, Object> report) {
+        StringBuilder text = new StringBuilder("\n=== Load report ===\n");
+        text.append(String.format("throughput: %.1f ops/s%n", (Double) report.get("throughputOpsPerSecond")));
+        for (String kind : new String[]{"read", "write"}) {
+            Map<String, Object> section = (Map<String, Object>) report.get(kind);
+            text.append(String.format("%-5s served=%d rejected=%d errors=%d%n", kind,
+                    section.get("served"), section.get("rejected"), section.get("errors")));
+            text.append("      latency ms    ").append(format((Map<String, Double>) section.get("latencyMillis"))).append('\n');
+            text.append("      uncorrected   ").append(format((Map<String, Double>) section.get("uncorrectedLatencyMillis"))).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String format(Map<String, Double> percentiles) {
+        StringBuilder text = new StringBuilder();
+        percentiles.forEach((name, value) -> text.append(String.format("%s=%.2f ", name, value)));
+        return text.toString().trim();
+    }
+
+    private void close() {
+        for (CoordinatorConnection connection : connections) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                System.out.println("Failed to close connection: " + e.getMessage());
+            }
+        }
+    }
+
+    //Key k (0 based) is drawn with probability proportional to 1 / (k + 1)^exponent
+    static class ZipfSampler {
+        private final double[] cumulative;
+
+        ZipfSampler(int keys, double exponent) {
+            cumulative = new double[keys];
+            double sum = 0;
+            for (int k = 0; k < keys; k++) {
+                sum += 1.0 / Math.pow(k + 1, exponent);
+                cumulative[k] = sum;
+            }
+            for (int k = 0; k < keys; k++) {
+                cumulative[k] /= sum;
+            }
+        }
+
+        int sample(Random random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(cumulative.length - 1, index >= 0 ? index : -index - 1);
+        }
+    }
+
+    //Weighted choice among fixed sizes, parsed from "bytes:weight,bytes:weight"
+    static class SizeSampler {
+        private final int[] sizes;
+        private final double[] cumulative;
+
+        private SizeSampler(int[] sizes, double[] cumulative) {
+            this.sizes = sizes;
+            this.cumulative = cumulative;
+        }
+
+        static SizeSampler parse(String spec) {
+            String[] entries = spec.split(",");
+            int[] sizes = new int[entries.length];
+            double[] cumulative = new double[entries.length];
+            double sum = 0;
+            for (int i = 0; i < entries.length; i++) {
+                String[] parts = entries[i].trim().split(":");
+                sizes[i] = Integer.parseInt(parts[0].trim());
+                sum += parts.length > 1 ? Double.parseDouble(parts[1].trim()) : 1;
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < cumulative.length; i++) {
+                cumulative[i] /= sum;
+            }
+            return new SizeSampler(sizes, cumulative);
+        }
+
+        int sample(Random random) {
+            double point = random.nextDouble();
+            for (int i = 0; i < cumulative.length; i++) {
+                if (point < cumulative[i]) return sizes[i];
+            }
+            return sizes[sizes.length - 1];
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.example.harness;
+
+import org.example.client.CoordinatorConnection;
+import org.example.rmi.CoordinatorRmi;
+import org.example.rmi.NodeServerRmi;
+import org.example.rmi.NodeService;
+import org.example.transport.NodeTransport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ A coordinator and nodes in one JVM on free ports, for measurements and fault tests without
+ starting processes by hand. Each node keeps its files in <root>/node-<port>/<department> and
+ syncs with every other node of the harness; the coordinator routes each department to that
+ department's node ports. Every call between them goes over the given transport (-Dtransport by
+ default), so the same scenarios compare RMI, framed sockets and in-memory calls.
+ Faults are injected where a node is served: a network delay before every call reaches it and a
+ disk delay before calls that read or write storage. A killed node stops being served, a
+ restarted one comes back on the same port and directory (loading its index snapshot).
+ Nodes and the coordinator share the process wide metrics registry and tracer.
+ */
+public class ClusterHarness implements Closeable {
+    private static final Set<String> STORAGE_CALLS = new HashSet<>(Arrays.asList(
+            "sendFile", "sendFileVersion", "fetchFile", "getContentHashes", "writeFile", "deleteFile",
+            "writeFragment", "readFragments", "deleteFragments", "deleteFragmentGenerations"));
+
+    private final Path root;
+    private final NodeTransport transport;
+    private final Map<String, List<Integer>> departmentNodes = new LinkedHashMap<>();
+    private final Map<Integer, Node> nodes = new ConcurrentHashMap<>();
+    private CoordinatorRmi coordinator;
+
+    private static class Node {
+        private final int port;
+        private final String department;
+        private final Path directory;
+        private volatile long networkDelayNanos;
+        private volatile long diskDelayNanos;
+        private NodeServerRmi server;
+        private Closeable endpoint;
+
+        Node(int port, String department, Path directory) {
+            this.port = port;
+            this.department = department;
+            this.directory = directory;
+        }
+    }
+
+    public ClusterHarness(Path root, Map<String, Integer> nodesPerDepartment) throws IOException {
+        this(root, nodesPerDepartment, NodeTransport.fromSystemProperty());
+    }
+
+    //Number of nodes per department, e.g. {development=2, qa=1}
+    public ClusterHarness(Path root, Map<String, Integer> nodesPerDepartment, NodeTransport transport) throws IOException {
+        this.root = root;
+        this.transport = transport;
+        for (Map.Entry<String, Integer> entry : nodesPerDepartment.entrySet()) {
+            String department = entry.getKey().toLowerCase();
+            List<Integer> ports = new ArrayList<>();
+            for (int i = 0; i < entry.getValue(); i++) {
+                int port = freePort();
+                ports.add(port);
+                nodes.put(port, new Node(port, department, root.resolve("node-" + port)));
+            }
+            departmentNodes.put(department, ports);
+        }
+    }
+
+    public void start() throws IOException {
+        for (Node node : nodes.values()) {
+            startNode(node);
+        }
+        coordinator = new CoordinatorRmi(0, Collections.emptyList(), departmentNodes, transport);
+        coordinator.start();
+    }
+
+    public int coordinatorPort() {
+        return coordinator.getPort();
+    }
+
+    public CoordinatorConnection connect() throws IOException {
+        return new CoordinatorConnection("localhost", coordinatorPort());
+    }
+
+    public List<Integer> nodePorts(String department) {
+        return departmentNodes.getOrDefault(department.toLowerCase(), Collections.emptyList());
+    }
+
+    public Set<Integer> allNodePorts() {
+        return new TreeSet<>(nodes.keySet());
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    public NodeTransport transport() {
+        return transport;
+    }
+
+    //Checked in process, not through the node's injected delays
+    public boolean nodeHas(int port, String fileName) throws IOException {
+        Node node = node(port);
+        return node.server != null && node.server.hasFile(fileName, null);
+    }
+
+    public void setNetworkDelay(int port, long delay, TimeUnit unit) {
+        node(port).networkDelayNanos = unit.toNanos(delay);
+    }
+
+    public void setDiskDelay(int port, long delay, TimeUnit unit) {
+        node(port).diskDelayNanos = unit.toNanos(delay);
+    }
+
+    public void killNode(int port) throws IOException {
+        Node node = node(port);
+        if (node.server == null) return;
+        node.endpoint.close();
+        node.server.close();
+        node.server = null;
+        System.out.println("Harness killed node " + port);
+    }
+
+    public void restartNode(int port) throws IOException {
+        Node node = node(port);
+        if (node.server != null) return;
+        startNode(node);
+        System.out.println("Harness restarted node " + port);
+    }
+
+    private void startNode(Node node) throws IOException {
+        List<Integer> peers = new ArrayList<>(nodes.keySet());
+        node.server = new NodeServerRmi(node.port, node.department, node.directory, peers, transport);
+        NodeServerRmi target = node.server;
+        NodeService faulty = (NodeService) Proxy.newProxyInstance(NodeService.class.getClassLoader(),
+                new Class<?>[]{NodeService.class}, (proxy, method, args) -> {
+                    pause(node.networkDelayNanos);
+                    if (STORAGE_CALLS.contains(method.getName())) pause(node.diskDelayNanos);
+                    try {
+                        return method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        node.endpoint = transport.serve(node.port, faulty);
+    }
+
+    private Node node(int port) {
+        Node node = nodes.get(port);
+        if (node == null) throw new IllegalArgumentException("No harness node on port " + port);
+        return node;
+    }
+
+    private static void pause(long nanos) throws InterruptedException {
+        if (nanos > 0) TimeUnit.NANOSECONDS.sleep(nanos);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (coordinator != null) coordinator.stop();
+        for (int port : nodes.keySet()) {
+            killNode(port);
+        }
+    }
+}
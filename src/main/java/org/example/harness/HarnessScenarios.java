@@ -0,0 +1,288 @@
+package org.example.harness;
+
+import com.google.gson.GsonBuilder;
+import org.example.client.CoordinatorConnection;
+import org.example.metrics.Histogram;
+import org.example.model.CommandType;
+import org.example.model.FileCommand;
+import org.example.model.User;
+import org.example.service.JwtService;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/*
+ Runs the standard measurements against an in-process ClusterHarness (development=2, qa=1 nodes)
+ and prints a report. Every option is a system property:
+   harness.root      storage directory, a temp directory removed afterwards by default
+   harness.seed      workload seed, the same seed replays the same operations per client (42)
+   harness.clients   client threads, one connection each (8)
+   harness.seconds   length of each timed phase (5)
+   harness.files     development files written before the phases (200)
+   harness.report    JSON report path (harness-report.json)
+   transport         rmi, socket or memory between coordinator and nodes (rmi), run once per transport to compare them
+ Phases, in order on the same cluster:
+   throughput   80% VIEW / 20% UPDATE of development files
+   slow-disk    VIEW only while one development node's disk is 50 ms slow
+   failover     UPDATE only while a development node is killed a third of the way in and restarted at two thirds
+   sync         files written through the coordinator until every node holds them
+ Unless set, rate limits are raised so clients measure the cluster rather than the limiter, and
+ nodes sync every second.
+ */
+public class HarnessScenarios {
+    private static final long SEED = Long.getLong("harness.seed", 42);
+    private static final int CLIENTS = Integer.getInteger("harness.clients", 8);
+    private static final int SECONDS = Integer.getInteger("harness.seconds", 5);
+    private static final int FILES = Integer.getInteger("harness.files", 200);
+    private static final String REPORT = System.getProperty("harness.report", "harness-report.json");
+    private static final String DEPARTMENT = "development";
+    private static final long SYNC_TIMEOUT_SECONDS = 60;
+
+    private final ClusterHarness harness;
+    private final String token = new JwtService().issue(new User("harness", DEPARTMENT, "Employee", ""));
+
+    //One client operation, true when it succeeded
+    private interface Operation {
+        boolean run(CoordinatorConnection connection, Random random) throws IOException;
+    }
+
+    private static class Phase {
+        private final Histogram latency = new Histogram();
+        private final LongAdder succeeded = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+    }
+
+    private HarnessScenarios(ClusterHarness harness) {
+        this.harness = harness;
+    }
+
+    public static void main(String[] args) throws Exception {
+        defaultProperty("rate.user", "1000000");
+        defaultProperty("rate.userBurst", "1000000");
+        defaultProperty("rate.department", "1000000");
+        defaultProperty("rate.departmentBurst", "1000000");
+        defaultProperty("sync.intervalSeconds", "1");
+        defaultProperty("trace.sampleRate", "0");
+
+        String configuredRoot = System.getProperty("harness.root");
+        Path root = configuredRoot != null ? Paths.get(configuredRoot) : Files.createTempDirectory("harness");
+        Map<String, Integer> layout = new LinkedHashMap<>();
+        layout.put(DEPARTMENT, 2);
+        layout.put("qa", 1);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        try (ClusterHarness harness = new ClusterHarness(root, layout)) {
+            harness.start();
+            report.put("transport", harness.transport().name());
+            HarnessScenarios scenarios = new HarnessScenarios(harness);
+            scenarios.preload();
+            report.put("throughput", scenarios.throughput());
+            report.put("slowDisk", scenarios.slowDisk());
+            report.put("failover", scenarios.failover());
+            report.put("sync", scenarios.syncConvergence());
+        } finally {
+            if (configuredRoot == null) deleteRecursively(root);
+        }
+
+        String json = new GsonBuilder().setPrettyPrinting().create().toJson(report);
+        System.out.println(json);
+        try (Writer writer = Files.newBufferedWriter(Paths.get(REPORT), StandardCharsets.UTF_8)) {
+            writer.write(json);
+        }
+        System.out.println("JSON report written to " + REPORT);
+        System.exit(0);
+    }
+
+    private void preload() throws IOException {
+        try (CoordinatorConnection connection = harness.connect()) {
+            for (int i = 0; i < FILES; i++) {
+                Object result = connection.request(command(CommandType.ADD, fileName(i), content(i, 0)));
+                if (!String.valueOf(result).startsWith("File saved")) {
+                    throw new IOException("Preload of " + fileName(i) + " failed: " + result);
+                }
+            }
+        }
+        System.out.printf("Harness: coordinator on %d, %s nodes %s, %d files preloaded%n",
+                harness.coordinatorPort(), harness.transport().name(), harness.allNodePorts(), FILES);
+    }
+
+    private Map<String, Object> throughput() throws Exception {
+        return summary(timed("throughput", SECONDS, (connection, random) ->
+                random.nextDouble() < 0.8 ? view(connection, random) : update(connection, random)));
+    }
+
+    private Map<String, Object> slowDisk() throws Exception {
+        int slowNode = harness.nodePorts(DEPARTMENT).get(0);
+        harness.setDiskDelay(slowNode, 50, TimeUnit.MILLISECONDS);
+        try {
+            Map<String, Object> result = summary(timed("slow-disk", SECONDS, this::view));
+            result.put("slowNode", slowNode);
+            return result;
+        } finally {
+            harness.setDiskDelay(slowNode, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Map<String, Object> failover() throws Exception {
+        int victim = harness.nodePorts(DEPARTMENT).get(0);
+        AtomicLong killedAt = new AtomicLong(Long.MAX_VALUE);
+        AtomicLong firstSuccessAfterKill = new AtomicLong();
+        Thread faults = new Thread(() -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(SECONDS * 1000L / 3);
+                killedAt.set(System.nanoTime());
+                harness.killNode(victim);
+                TimeUnit.MILLISECONDS.sleep(SECONDS * 1000L / 3);
+                harness.restartNode(victim);
+            } catch (Exception e) {
+                System.out.println("Fault injection failed: " + e.getMessage());
+            }
+        }, "harness-faults");
+        faults.start();
+
+        Phase phase = timed("failover", SECONDS, (connection, random) -> {
+            boolean saved = update(connection, random);
+            long now = System.nanoTime();
+            if (saved && now > killedAt.get()) firstSuccessAfterKill.compareAndSet(0, now);
+            return saved;
+        });
+        faults.join();
+
+        Map<String, Object> result = summary(phase);
+        result.put("killedNode", victim);
+        result.put("firstWriteAfterKillMillis", firstSuccessAfterKill.get() == 0 ? -1
+                : (firstSuccessAfterKill.get() - killedAt.get()) / 1e6);
+        return result;
+    }
+
+    private Map<String, Object> syncConvergence() throws Exception {
+        int count = Math.max(1, FILES / 4);
+        long start = System.nanoTime();
+        try (CoordinatorConnection connection = harness.connect()) {
+            for (int i = 0; i < count; i++) {
+                connection.request(command(CommandType.ADD, "sync-" + i + ".txt", content(i, 1)));
+            }
+        }
+        long written = System.nanoTime();
+
+        long deadline = written + TimeUnit.SECONDS.toNanos(SYNC_TIMEOUT_SECONDS);
+        boolean converged = false;
+        while (!converged && System.nanoTime() < deadline) {
+            converged = true;
+            for (int port : harness.allNodePorts()) {
+                for (int i = 0; i < count && converged; i++) {
+                    converged = harness.nodeHas(port, "sync-" + i + ".txt");
+                }
+                if (!converged) break;
+            }
+            if (!converged) TimeUnit.MILLISECONDS.sleep(20);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("files", count);
+        result.put("nodes", harness.allNodePorts().size());
+        result.put("writeMillis", (written - start) / 1e6);
+        result.put("converged", converged);
+        result.put("convergenceMillis", converged ? (System.nanoTime() - written) / 1e6 : -1);
+        return result;
+    }
+
+    //Run the operation on every client until the phase ends, client i always draws from seed + i
+    private Phase timed(String name, int seconds, Operation operation) throws Exception {
+        System.out.printf("Phase %s: %d clients for %ds%n", name, CLIENTS, seconds);
+        Phase phase = new Phase();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            Random random = new Random(SEED + i);
+            Thread client = new Thread(() -> {
+                try (CoordinatorConnection connection = harness.connect()) {
+                    while (System.nanoTime() < end) {
+                        long start = System.nanoTime();
+                        boolean ok;
+                        try {
+                            ok = operation.run(connection, random);
+                        } catch (IOException e) {
+                            ok = false;
+                        }
+                        phase.latency.recordSince(start);
+                        (ok ? phase.succeeded : phase.failed).increment();
+                    }
+                } catch (IOException e) {
+                    System.out.println("Harness client failed: " + e.getMessage());
+                }
+            }, "harness-client-" + i);
+            clients.add(client);
+            client.start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        return phase;
+    }
+
+    private boolean view(CoordinatorConnection connection, Random random) throws IOException {
+        Object result = connection.request(command(CommandType.VIEW, fileName(random.nextInt(FILES)), ""));
+        return String.valueOf(result).startsWith("harness ");
+    }
+
+    private boolean update(CoordinatorConnection connection, Random random) throws IOException {
+        int key = random.nextInt(FILES);
+        Object result = connection.request(command(CommandType.UPDATE, fileName(key), content(key, random.nextInt())));
+        return String.valueOf(result).startsWith("File saved");
+    }
+
+    private FileCommand command(CommandType type, String fileName, String content) {
+        FileCommand command = new FileCommand(type, fileName, DEPARTMENT, content, "harness");
+        command.setAuthToken(token);
+        return command;
+    }
+
+    private static String fileName(int key) {
+        return "harness-" + key + ".txt";
+    }
+
+    private static String content(int key, int revision) {
+        return "harness " + key + " revision " + revision;
+    }
+
+    private static Map<String, Object> summary(Phase phase) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        long total = phase.succeeded.sum() + phase.failed.sum();
+        summary.put("operations", total);
+        summary.put("failed", phase.failed.sum());
+        summary.put("throughputOpsPerSecond", total / (double) SECONDS);
+        Map<String, Double> latency = new LinkedHashMap<>();
+        for (double percentile : new double[]{50, 90, 99, 100}) {
+            latency.put("p" + (int) percentile, phase.latency.percentileNanos(percentile) / 1e6);
+        }
+        summary.put("latencyMillis", latency);
+        return summary;
+    }
+
+    private static void defaultProperty(String name, String value) {
+        if (System.getProperty(name) == null) System.setProperty(name, value);
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        if (!Files.exists(root)) return;
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    System.out.println("Failed to delete " + path + ": " + e.getMessage());
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.example.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+import javax.management.ObjectName;
+
+/*
+ Named metrics of one process, grouped into families (one name, one help text, one type) with a
+ series per label set, e.g. coordinator_command_seconds{command="VIEW"}. Callers look a series up
+ once and keep the Counter or Histogram in a field, so the hot path never touches the maps.
+ expose() publishes everything over JMX and as Prometheus text on a local HTTP port.
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    private static class Family {
+        private final String help;
+        private final String type;
+        private final Map<String, Object> series = new ConcurrentHashMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    public static MetricsRegistry global() {
+        return GLOBAL;
+    }
+
+    //Labels are name/value pairs: counter("x_total", "help", "port", "5001")
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) series(name, help, "counter", labels, Counter::new);
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) series(name, help, "summary", labels, Histogram::new);
+    }
+
+    //Sampled when metrics are read, the supplier must be cheap and thread safe
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "gauge").series.put(labelText(labels), value);
+    }
+
+    private Object series(String name, String help, String type, String[] labels, Supplier<Object> factory) {
+        return family(name, help, type).series.computeIfAbsent(labelText(labels), key -> factory.get());
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private static String labelText(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (text.length() > 0) text.append(',');
+            text.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return text.toString();
+    }
+
+    //Prometheus text exposition format 0.0.4, histograms as summaries in seconds
+    public String prometheusText() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Family> entry : new TreeMap<>(families).entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> series : new TreeMap<>(family.series).entrySet()) {
+                String labels = series.getKey();
+                Object metric = series.getValue();
+                if (metric instanceof Histogram) {
+                    Histogram histogram = (Histogram) metric;
+                    for (double quantile : QUANTILES) {
+                        String withQuantile = (labels.isEmpty() ? "" : labels + ",") + "quantile=\"" + quantile + "\"";
+                        line(out, name, withQuantile, seconds(histogram.percentileNanos(quantile * 100)));
+                    }
+                    line(out, name + "_sum", labels, seconds(histogram.sumNanos()));
+                    line(out, name + "_count", labels, histogram.count());
+                } else {
+                    line(out, name, labels, value(metric));
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    //Flat view for JMX: one entry per series, histograms as count, p50, p99 and p999 in milliseconds
+    public Map<String, Double> snapshot() {
+        Map<String, Double> values = new TreeMap<>();
+        families.forEach((name, family) -> family.series.forEach((labels, metric) -> {
+            String key = labels.isEmpty() ? name : name + "{" + labels + "}";
+            if (metric instanceof Histogram) {
+                Histogram histogram = (Histogram) metric;
+                values.put(key + ".count", (double) histogram.count());
+                values.put(key + ".p50Millis", histogram.percentileNanos(50) / 1e6);
+                values.put(key + ".p99Millis", histogram.percentileNanos(99) / 1e6);
+                values.put(key + ".p999Millis", histogram.percentileNanos(99.9) / 1e6);
+            } else {
+                values.put(key, value(metric));
+            }
+        }));
+        return values;
+    }
+
+    //Register the JMX bean and serve /metrics on the port, a port below 1 skips the HTTP endpoint
+    public void expose(String component, int httpPort) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(this),
+                    new ObjectName("org.example:type=Metrics,component=" + component));
+        } catch (Exception e) {
+            System.out.println("Failed to register metrics MBean: " + e.getMessage());
+        }
+        if (httpPort < 1) return;
+        try {
+            new MetricsServer(this, httpPort).start();
+            System.out.println("Metrics for " + component + " on http://localhost:" + httpPort + "/metrics");
+        } catch (IOException e) {
+            System.out.println("Failed to start metrics endpoint on port " + httpPort + ": " + e.getMessage());
+        }
+    }
+
+    private static double value(Object metric) {
+        if (metric instanceof Counter) return ((Counter) metric).get();
+        return ((DoubleSupplier) metric).getAsDouble();
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static void line(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(String.format(Locale.ROOT, "%.9g", value));
+        }
+        out.append('\n');
+    }
+}
@@ -0,0 +1,29 @@
+package org.example.model;
+
+import java.io.Serializable;
+
+/* Names a node created or changed after a peer's sync cursor, with the cursor to ask from next time.
+   A node's epoch changes when it loses its index snapshot, a cursor from another epoch gets every name */
+public class ChangeSet implements Serializable {
+    private final long epoch;
+    private final long sequence;
+    private final String[] names;
+
+    public ChangeSet(long epoch, long sequence, String[] names) {
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.names = names;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String[] getNames() {
+        return names;
+    }
+}
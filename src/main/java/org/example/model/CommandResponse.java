@@ -0,0 +1,47 @@
+package org.example.model;
+
+import java.io.Serializable;
+
+/* Response envelope for a pipelined client session, the request id ties it back to its FileCommand.
+   A failed response carries the reason as its result, for commands such as LOGIN whose result is
+   data the client must not mistake for a message */
+public class CommandResponse implements Serializable {
+    private final long requestId;
+    private final Object result;
+    private final boolean failed;
+
+    public CommandResponse(long requestId, Object result) {
+        this(requestId, result, false);
+    }
+
+    public CommandResponse(long requestId, Object result, boolean failed) {
+        this.requestId = requestId;
+        this.result = result;
+        this.failed = failed;
+    }
+
+    public static CommandResponse failure(long requestId, String reason) {
+        return new CommandResponse(requestId, reason, true);
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public Object getResult() {
+        return result;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    public String toString() {
+        return "CommandResponse{" +
+                "requestId=" + requestId +
+                ", result=" + result +
+                ", failed=" + failed +
+                '}';
+    }
+}
@@ -8,5 +8,7 @@ public enum CommandType {
     SYNC_LIST,
     SEND_FILE,
     VIEW_ALL,
-    HAS_FILE
+    HAS_FILE,
+    SEARCH,
+    LOGIN
 }
@@ -8,6 +8,12 @@ public class FileCommand implements Serializable {
     private String department;
     private String content;
     private String requestedBy;
+    private long requestId;
+    private String authToken;
+    private String cursor;
+    private int limit;
+    private long version;
+    private String traceId;
 
     public FileCommand(CommandType type, String fileName, String department, String content, String requestedBy) {
         this.type = type;
@@ -37,10 +43,66 @@ public class FileCommand implements Serializable {
         return requestedBy;
     }
 
+    //Assigned by the client connection so responses can come back out of order
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(long requestId) {
+        this.requestId = requestId;
+    }
+
+    //Signed access token from AuthService, left out of toString so it never ends up in logs
+    public String getAuthToken() {
+        return authToken;
+    }
+
+    public void setAuthToken(String authToken) {
+        this.authToken = authToken;
+    }
+
+    //Listing position for paged commands like VIEW_ALL, the last name of the previous page
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    //Page size for paged commands, 0 means the server default
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    //Version to read for VIEW, 0 means the latest committed version
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    //Follows the command through the coordinator and nodes, set by the coordinator when the client didn't
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public void setTraceId(String traceId) {
+        this.traceId = traceId;
+    }
+
     @Override
     public String toString() {
         return "FileCommand{" +
-                "type=" + type +
+                "requestId=" + requestId +
+                ", traceId=" + traceId +
+                ", type=" + type +
                 ", fileName='" + fileName + '\'' +
                 ", department='" + department + '\'' +
                 ", requestedBy='" + requestedBy + '\'' +
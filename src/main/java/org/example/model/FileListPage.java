@@ -0,0 +1,34 @@
+package org.example.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+// One page of a sorted file listing, pass nextCursor back to get the following page
+public class FileListPage implements Serializable {
+    private final List<String> names;
+    private final String nextCursor;
+
+    public FileListPage(List<String> names, String nextCursor) {
+        this.names = names;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    //null on the last page
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (String name : names) {
+            text.append(name).append('\n');
+        }
+        text.append(nextCursor == null ? "(end of listing)" : "(more after " + nextCursor + ")");
+        return text.toString();
+    }
+}
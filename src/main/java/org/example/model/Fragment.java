@@ -0,0 +1,49 @@
+package org.example.model;
+
+import java.io.Serializable;
+
+/* One Reed-Solomon shard of an erasure coded file. Every shard of one write carries the same generation,
+   shards of different generations are never combined; any dataShards of them give the content back */
+public class Fragment implements Serializable {
+    private final long generation;
+    private final int index;
+    private final int dataShards;
+    private final int parityShards;
+    private final int length;
+    private final byte[] data;
+
+    public Fragment(long generation, int index, int dataShards, int parityShards, int length, byte[] data) {
+        this.generation = generation;
+        this.index = index;
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+        this.length = length;
+        this.data = data;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    //Position in the code, below dataShards a data shard, from there on a parity shard
+    public int getIndex() {
+        return index;
+    }
+
+    public int getDataShards() {
+        return dataShards;
+    }
+
+    public int getParityShards() {
+        return parityShards;
+    }
+
+    //Byte length of the whole UTF-8 content, the last data shard is padded up to the shard size
+    public int getLength() {
+        return length;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+}
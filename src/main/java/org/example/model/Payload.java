@@ -0,0 +1,50 @@
+package org.example.model;
+
+import org.example.protocol.Compression;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+// File body moved between nodes, deflated when the receiver accepts it and it is worth it
+public class Payload implements Serializable {
+    private final byte[] data;
+    private final int rawLength;
+    private final boolean compressed;
+
+    private Payload(byte[] data, int rawLength, boolean compressed) {
+        this.data = data;
+        this.rawLength = rawLength;
+        this.compressed = compressed;
+    }
+
+    public static Payload of(String content, boolean allowCompression) {
+        return of(content.getBytes(StandardCharsets.UTF_8), allowCompression);
+    }
+
+    public static Payload of(byte[] raw, boolean allowCompression) {
+        byte[] deflated = allowCompression ? Compression.deflate(raw) : null;
+        return deflated != null ? new Payload(deflated, raw.length, true) : new Payload(raw, raw.length, false);
+    }
+
+    public String text() throws IOException {
+        return new String(bytes(), StandardCharsets.UTF_8);
+    }
+
+    //The UTF-8 body, lets a receiver store it without decoding it into a String first
+    public byte[] bytes() throws IOException {
+        return compressed ? Compression.inflate(data, rawLength) : data;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public int getRawLength() {
+        return rawLength;
+    }
+
+    public int getWireLength() {
+        return data.length;
+    }
+}
@@ -0,0 +1,103 @@
+package org.example.node;
+
+import org.example.metrics.Counter;
+import org.example.metrics.MetricsRegistry;
+
+import java.nio.ByteBuffer;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ Reusable ByteBuffers in power of two size classes from 4 KB to -Dbuffers.maxClassBytes (default 4 MB).
+ A released buffer is kept for the next acquire of its class while the idle buffers of the pool stay
+ under the pool's byte limit, otherwise it is left to the garbage collector. Larger requests get a
+ buffer of their own that is never pooled.
+ The direct pool (-Dbuffers.directBytes, default 64 MB) is what node file I/O reads into and writes
+ from. Without it FileChannel copies heap buffers through a per-thread direct buffer cache the JDK
+ sizes to the largest transfer each thread ever made, with no bound over all threads. The heap pool
+ (-Dbuffers.heapBytes, default 64 MB) holds array backed buffers for turning bytes into Strings.
+ */
+public class BufferPool {
+    private static final int MIN_CLASS_SHIFT = 12;
+    private static final int MAX_CLASS_BYTES = Integer.getInteger("buffers.maxClassBytes", 4 * 1024 * 1024);
+    private static final BufferPool DIRECT = new BufferPool("direct", true, Long.getLong("buffers.directBytes", 64L << 20));
+    private static final BufferPool HEAP = new BufferPool("heap", false, Long.getLong("buffers.heapBytes", 64L << 20));
+
+    private final boolean direct;
+    private final long maxIdleBytes;
+    private final Deque<ByteBuffer>[] classes;
+    private final AtomicLong idleBytes = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter oversized;
+
+    @SuppressWarnings("unchecked")
+    BufferPool(String name, boolean direct, long maxIdleBytes) {
+        this.direct = direct;
+        this.maxIdleBytes = maxIdleBytes;
+        int count = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(1, MAX_CLASS_BYTES - 1)) - MIN_CLASS_SHIFT + 1);
+        this.classes = new Deque[count];
+        for (int i = 0; i < count; i++) {
+            classes[i] = new ConcurrentLinkedDeque<>();
+        }
+        MetricsRegistry metrics = MetricsRegistry.global();
+        String help = "Buffers taken from the node buffer pool, by whether a pooled one was free";
+        this.hits = metrics.counter("node_buffer_acquires_total", help, "pool", name, "result", "hit");
+        this.misses = metrics.counter("node_buffer_acquires_total", help, "pool", name, "result", "miss");
+        this.oversized = metrics.counter("node_buffer_acquires_total", help, "pool", name, "result", "oversized");
+        metrics.gauge("node_buffer_idle_bytes", "Bytes held by idle pooled buffers", idleBytes::get, "pool", name);
+    }
+
+    public static BufferPool direct() {
+        return DIRECT;
+    }
+
+    public static BufferPool heap() {
+        return HEAP;
+    }
+
+    //A cleared buffer with at least size bytes of capacity and its limit at size, give it back with release
+    public ByteBuffer acquire(int size) {
+        int sizeClass = sizeClass(size);
+        if (sizeClass < 0) {
+            oversized.increment();
+            return allocate(size);
+        }
+
+        ByteBuffer buffer = classes[sizeClass].pollFirst();
+        if (buffer == null) {
+            misses.increment();
+            buffer = allocate(1 << (sizeClass + MIN_CLASS_SHIFT));
+        } else {
+            hits.increment();
+            idleBytes.addAndGet(-buffer.capacity());
+        }
+        buffer.clear().limit(size);
+        return buffer;
+    }
+
+    //Buffers of a size no class has, and anything beyond the idle limit, are dropped
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        int sizeClass = sizeClass(capacity);
+        if (sizeClass < 0 || capacity != 1 << (sizeClass + MIN_CLASS_SHIFT) || buffer.isDirect() != direct) return;
+        if (idleBytes.addAndGet(capacity) > maxIdleBytes) {
+            idleBytes.addAndGet(-capacity);
+            return;
+        }
+        classes[sizeClass].offerFirst(buffer);
+    }
+
+    //Index of the smallest class holding size bytes, -1 above the largest class
+    private int sizeClass(int size) {
+        if (size > MAX_CLASS_BYTES) return -1;
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, size - 1));
+        int index = Math.max(0, bits - MIN_CLASS_SHIFT);
+        return index < classes.length ? index : -1;
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
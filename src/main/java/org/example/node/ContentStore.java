@@ -0,0 +1,155 @@
+package org.example.node;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/*
+ Content-addressed blobs for deduplicating nodes (-Dstorage.dedup=true). A body is kept once at
+ <root>/.cas/<first two hex>/<sha-256> and every version holding it is a hard link to that blob,
+ so the filesystem link count is the reference count: a blob with a single link is unreferenced
+ and collected. Writing content that is already stored only creates a link. Linking never touches
+ the blob, its mtime stays that of its first write, since every name linked to it shows that mtime.
+ Deduplicated files share an inode, edit them through the node rather than in place on disk.
+ */
+public class ContentStore {
+    public static final String CAS_DIR = ".cas";
+    private static final int LOCK_STRIPES = 256;
+    private static final int HASH_CHUNK_BYTES = 256 * 1024;
+
+    private final Path root;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final LongAdder dedupHits = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    public ContentStore(Path storageRoot) {
+        this.root = storageRoot.resolve(CAS_DIR);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    //Store the bytes unless an identical blob exists, then link target to it, returns the hash
+    public String store(byte[] bytes, Path target) throws IOException {
+        return store(bytes, hash(bytes), target);
+    }
+
+    String store(byte[] bytes, String hash, Path target) throws IOException {
+        Path blob = blob(hash);
+        synchronized (lockFor(hash)) {
+            if (Files.exists(blob)) {
+                dedupHits.increment();
+                bytesSaved.add(bytes.length);
+            } else {
+                Files.createDirectories(blob.getParent());
+                Path temp = blob.resolveSibling("." + hash + ".tmp");
+                Files.write(temp, bytes, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+                Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE);
+            }
+            link(blob, target);
+        }
+        return hash;
+    }
+
+    //Link target to an already stored blob, false when this node doesn't have the content
+    public boolean linkExisting(String hash, Path target) throws IOException {
+        if (!isHash(hash)) return false;
+        Path blob = blob(hash);
+        synchronized (lockFor(hash)) {
+            if (!Files.exists(blob)) return false;
+            link(blob, target);
+            dedupHits.increment();
+            bytesSaved.add(Files.size(blob));
+            return true;
+        }
+    }
+
+    private void link(Path blob, Path target) throws IOException {
+        Files.createLink(target, blob);
+    }
+
+    public boolean contains(String hash) {
+        return isHash(hash) && Files.exists(blob(hash));
+    }
+
+    //Hashes arrive from peers, anything but 64 hex digits must never become a path
+    private static boolean isHash(String hash) {
+        return hash != null && hash.matches("[0-9a-f]{64}");
+    }
+
+    //Delete blobs no version links to any more
+    public int collectGarbage() {
+        if (!Files.isDirectory(root)) return 0;
+
+        int removed = 0;
+        try (Stream<Path> blobs = Files.walk(root, 2)) {
+            for (Path blob : (Iterable<Path>) blobs::iterator) {
+                String hash = blob.getFileName().toString();
+                if (hash.startsWith(".") || !Files.isRegularFile(blob)) continue;
+                synchronized (lockFor(hash)) {
+                    if ((Integer) Files.getAttribute(blob, "unix:nlink") == 1) {
+                        Files.delete(blob);
+                        removed++;
+                    }
+                }
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            System.out.println("Blob garbage collection failed: " + e.getMessage());
+        }
+        return removed;
+    }
+
+    public String stats() {
+        return String.format("%d duplicate writes, %d bytes not stored twice", dedupHits.sum(), bytesSaved.sum());
+    }
+
+    public static String hash(byte[] bytes) {
+        return hex(digest().digest(bytes));
+    }
+
+    //Hash of a file's bytes streamed through a pooled direct buffer instead of read into memory whole
+    public static String hash(Path file) throws IOException {
+        MessageDigest digest = digest();
+        ByteBuffer direct = BufferPool.direct().acquire(HASH_CHUNK_BYTES);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(direct) >= 0) {
+                direct.flip();
+                digest.update(direct);
+                direct.clear();
+            }
+        } finally {
+            BufferPool.direct().release(direct);
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String hex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private Path blob(String hash) {
+        return root.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private Object lockFor(String hash) {
+        return locks[Math.floorMod(hash.hashCode(), LOCK_STRIPES)];
+    }
+}
@@ -0,0 +1,495 @@
+package org.example.node;
+
+import org.example.model.ChangeSet;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+
+/*
+ In-memory listing of a department directory (name, size, mtime) so listing and existence checks
+ don't hit the filesystem. Built once at startup, updated by the node's own writes and deletes,
+ and kept honest by a WatchService thread for changes made behind the node's back. Every
+ directory of the storage layout is watched, new shard directories are picked up as they appear.
+ Hidden files (starting with ".") are never indexed.
+
+ Every change gets the next number of a change sequence, so a peer that remembers the last
+ sequence it synced only asks for what changed since (changesSince). The index, the sequence and
+ the peers' sync cursors are saved to <root>/.index every -Dindex.snapshotSeconds (default 30) and
+ on close. A restart loads the snapshot and serves from it at once while a background pass checks
+ it against the disk. A snapshot that wasn't written by a clean close may be behind what peers
+ have already seen, so it starts a new epoch and peers compare full listings once.
+ */
+public class DirectoryIndex implements Closeable {
+    public static final String SNAPSHOT_FILE = ".index";
+    private static final int SNAPSHOT_MAGIC = 0x44494458;
+    private static final int SNAPSHOT_FORMAT = 1;
+
+    private final StorageLayout layout;
+    private final Path snapshotFile;
+    private final Map<String, FileInfo> files = new ConcurrentHashMap<>();
+    private final NavigableSet<String> sortedNames = new ConcurrentSkipListSet<>();
+    private final NavigableMap<Long, String> changes = new ConcurrentSkipListMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Integer, PeerCursor> peerCursors = new ConcurrentHashMap<>();
+    private final Object snapshotLock = new Object();
+    private volatile long epoch;
+    private volatile long savedSequence = -1;
+    private volatile boolean cursorsChanged;
+    private volatile BiFunction<String, Long, String> hashes = (name, modifiedMillis) -> null;
+    private WatchService watcher;
+    private Thread watchThread;
+    private ScheduledExecutorService snapshots;
+
+    public static class FileInfo {
+        private final String name;
+        private final long size;
+        private final long modifiedMillis;
+        private final long version;
+        private final String hash;
+        private final long sequence;
+
+        public FileInfo(String name, long size, long modifiedMillis) {
+            this(name, size, modifiedMillis, 0, null, 0);
+        }
+
+        FileInfo(String name, long size, long modifiedMillis, long version, String hash, long sequence) {
+            this.name = name;
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+            this.version = version;
+            this.hash = hash;
+            this.sequence = sequence;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getModifiedMillis() {
+            return modifiedMillis;
+        }
+
+        //Version number of the node's last write, 0 when the change was found on disk
+        public long getVersion() {
+            return version;
+        }
+
+        //SHA-256 known when the snapshot was saved, only valid while the file still has this mtime
+        public String getHash() {
+            return hash;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        boolean sameFile(long size, long modifiedMillis) {
+            return this.size == size && this.modifiedMillis == modifiedMillis;
+        }
+    }
+
+    // Where a peer's change sequence stood after the last complete sync from it
+    public static class PeerCursor {
+        private final long epoch;
+        private final long sequence;
+
+        PeerCursor(long epoch, long sequence) {
+            this.epoch = epoch;
+            this.sequence = sequence;
+        }
+
+        public long getEpoch() {
+            return epoch;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+    }
+
+    public DirectoryIndex(StorageLayout layout) {
+        this.layout = layout;
+        this.snapshotFile = layout.root().resolve(SNAPSHOT_FILE);
+    }
+
+    public void start() throws IOException {
+        watcher = layout.root().getFileSystem().newWatchService();
+        for (Path dir : layout.directories()) {
+            register(dir);
+        }
+        boolean loaded = loadSnapshot();
+        if (!loaded) {
+            epoch = newEpoch();
+            rebuild();
+        }
+        //Right away, so a crash before the next save can't leave a clean snapshot behind the live sequence
+        saveSnapshot(false);
+        watchThread = new Thread(this::watch, "index-watch-" + layout.root().getFileName());
+        watchThread.setDaemon(true);
+        watchThread.start();
+        if (loaded) {
+            Thread verifier = new Thread(this::verify, "index-verify-" + layout.root().getFileName());
+            verifier.setDaemon(true);
+            verifier.start();
+        }
+
+        long interval = Long.getLong("index.snapshotSeconds", 30);
+        snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "index-snapshot-" + layout.root().getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshots.scheduleWithFixedDelay(() -> saveSnapshot(false), interval, interval, TimeUnit.SECONDS);
+    }
+
+    //Lets snapshots carry content hashes, the lookup gets a name and mtime and answers null when it doesn't know
+    public void setHashes(BiFunction<String, Long, String> hashes) {
+        this.hashes = hashes;
+    }
+
+    public boolean contains(String name) {
+        return files.containsKey(name);
+    }
+
+    public FileInfo get(String name) {
+        return files.get(name);
+    }
+
+    public String[] names() {
+        return files.keySet().toArray(new String[0]);
+    }
+
+    public int size() {
+        return files.size();
+    }
+
+    public Collection<FileInfo> entries() {
+        return files.values();
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    //Names changed after the given cursor, every name when the cursor is from another epoch
+    public ChangeSet changesSince(long cursorEpoch, long cursorSequence) {
+        long upTo;
+        synchronized (this) {
+            upTo = sequence.get();
+        }
+        if (cursorEpoch != epoch) {
+            return new ChangeSet(epoch, upTo, names());
+        }
+        Collection<String> changed = changes.subMap(cursorSequence, false, upTo, true).values();
+        return new ChangeSet(epoch, upTo, new LinkedHashSet<>(changed).toArray(new String[0]));
+    }
+
+    public PeerCursor peerCursor(int peerPort) {
+        return peerCursors.get(peerPort);
+    }
+
+    //Called once every change up to the sequence was pulled from the peer
+    public void recordPeerCursor(int peerPort, long peerEpoch, long peerSequence) {
+        peerCursors.put(peerPort, new PeerCursor(peerEpoch, peerSequence));
+        cursorsChanged = true;
+    }
+
+    //Up to limit names in sorted order, strictly after the cursor and starting with the prefix
+    public List<String> page(String prefix, String after, int limit) {
+        String from = prefix == null ? "" : prefix;
+        NavigableSet<String> tail = after != null && after.compareTo(from) >= 0
+                ? sortedNames.tailSet(after, false)
+                : sortedNames.tailSet(from, true);
+
+        List<String> page = new ArrayList<>(Math.min(limit, 1024));
+        for (String name : tail) {
+            if (!name.startsWith(from) || page.size() >= limit) break;
+            page.add(name);
+        }
+        return page;
+    }
+
+    //Called by the node after it wrote the file itself
+    public void recordWrite(String name, long size) {
+        recordWrite(name, size, 0);
+    }
+
+    public void recordWrite(String name, long size, long version) {
+        if (!isIndexable(name)) return;
+        //The mtime on disk, so the next startup check doesn't take the node's own write for a change
+        long modifiedMillis = System.currentTimeMillis();
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(layout.resolve(name), BasicFileAttributes.class);
+            size = attributes.size();
+            modifiedMillis = attributes.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            //keep the caller's size
+        }
+        put(name, size, modifiedMillis, version);
+    }
+
+    public void recordDelete(String name) {
+        remove(name);
+    }
+
+    private synchronized void put(String name, long size, long modifiedMillis, long version) {
+        long next = sequence.incrementAndGet();
+        FileInfo previous = files.put(name, new FileInfo(name, size, modifiedMillis, version, null, next));
+        if (previous != null) changes.remove(previous.getSequence());
+        changes.put(next, name);
+        sortedNames.add(name);
+    }
+
+    private synchronized void remove(String name) {
+        FileInfo previous = files.remove(name);
+        if (previous == null) return;
+        sequence.incrementAndGet();
+        changes.remove(previous.getSequence());
+        sortedNames.remove(name);
+    }
+
+    private void register(Path dir) throws IOException {
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    //Bring the index in line with the disk, files that didn't change keep their sequence number
+    private void rebuild() throws IOException {
+        Set<String> seen = new HashSet<>();
+        try (Stream<Path> entries = layout.files()) {
+            entries.forEach(path -> {
+                seen.add(path.getFileName().toString());
+                refresh(path);
+            });
+        }
+        for (String name : names()) {
+            if (!seen.contains(name) && !Files.exists(layout.resolve(name))) remove(name);
+        }
+    }
+
+    private void verify() {
+        long start = System.currentTimeMillis();
+        long before = sequence.get();
+        try {
+            rebuild();
+            System.out.printf("Index snapshot of %s verified in %d ms, %d changes found%n",
+                    layout.root(), System.currentTimeMillis() - start, sequence.get() - before);
+        } catch (IOException e) {
+            System.out.println("Index verification failed for " + layout.root() + ": " + e.getMessage());
+        }
+    }
+
+    //A new shard directory: watch it, then index whatever landed in it before the watch existed
+    private void onDirectoryCreated(Path dir) throws IOException {
+        register(dir);
+        try (Stream<Path> entries = Files.list(dir)) {
+            for (Path entry : (Iterable<Path>) entries::iterator) {
+                if (Files.isDirectory(entry)) {
+                    onDirectoryCreated(entry);
+                } else {
+                    refresh(entry);
+                }
+            }
+        }
+    }
+
+    private void refresh(Path path) {
+        String name = path.getFileName().toString();
+        //Files outside the place the layout puts them are invisible to reads, so don't list them either
+        if (!isIndexable(name) || !path.equals(layout.resolve(name))) return;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long modifiedMillis = attributes.lastModifiedTime().toMillis();
+            FileInfo known = files.get(name);
+            if (attributes.isRegularFile() && (known == null || !known.sameFile(attributes.size(), modifiedMillis))) {
+                put(name, attributes.size(), modifiedMillis, 0);
+            }
+        } catch (NoSuchFileException e) {
+            remove(name);
+        } catch (IOException e) {
+            System.out.println("Failed to index " + path + ": " + e.getMessage());
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        rebuild();
+                        continue;
+                    }
+                    Path path = ((Path) key.watchable()).resolve((Path) event.context());
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        remove(path.getFileName().toString());
+                    } else if (Files.isDirectory(path)) {
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && isIndexable(path.getFileName().toString())) {
+                            try {
+                                onDirectoryCreated(path);
+                            } catch (IOException e) {
+                                System.out.println("Failed to watch " + path + ": " + e.getMessage());
+                            }
+                        }
+                    } else {
+                        refresh(path);
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //closed
+        } catch (IOException e) {
+            System.out.println("Directory watch failed for " + layout.root() + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean isIndexable(String name) {
+        return !name.startsWith(".");
+    }
+
+    private static long newEpoch() {
+        long epoch;
+        do {
+            epoch = ThreadLocalRandom.current().nextLong();
+        } while (epoch == 0);
+        return epoch;
+    }
+
+    //Write the snapshot if anything changed since the last one, clean marks a snapshot taken at close
+    public void saveSnapshot(boolean clean) {
+        synchronized (snapshotLock) {
+            writeSnapshot(clean);
+        }
+    }
+
+    private void writeSnapshot(boolean clean) {
+        long upTo = sequence.get();
+        if (!clean && upTo == savedSequence && !cursorsChanged) return;
+        cursorsChanged = false;
+
+        Path temp = snapshotFile.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_FORMAT);
+            out.writeUTF(layout.describe());
+            out.writeBoolean(clean);
+            out.writeLong(epoch);
+            out.writeLong(upTo);
+
+            Collection<FileInfo> entries = new ArrayList<>(files.values());
+            out.writeInt(entries.size());
+            for (FileInfo info : entries) {
+                String hash = hashes.apply(info.getName(), info.getModifiedMillis());
+                out.writeUTF(info.getName());
+                out.writeLong(info.getSize());
+                out.writeLong(info.getModifiedMillis());
+                out.writeLong(info.getVersion());
+                out.writeUTF(hash == null ? "" : hash);
+                out.writeLong(info.getSequence());
+            }
+
+            Map<Integer, PeerCursor> cursors = new HashMap<>(peerCursors);
+            out.writeInt(cursors.size());
+            for (Map.Entry<Integer, PeerCursor> cursor : cursors.entrySet()) {
+                out.writeInt(cursor.getKey());
+                out.writeLong(cursor.getValue().getEpoch());
+                out.writeLong(cursor.getValue().getSequence());
+            }
+            out.flush();
+            channel.force(true);
+        } catch (IOException e) {
+            System.out.println("Failed to save index snapshot of " + layout.root() + ": " + e.getMessage());
+            return;
+        }
+
+        try {
+            Files.move(temp, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            savedSequence = upTo;
+        } catch (IOException e) {
+            System.out.println("Failed to save index snapshot of " + layout.root() + ": " + e.getMessage());
+        }
+    }
+
+    //False when there is no usable snapshot and the index has to be built from the disk
+    private boolean loadSnapshot() {
+        if (!Files.exists(snapshotFile)) return false;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_FORMAT) {
+                System.out.println("Ignoring index snapshot of " + layout.root() + ": unknown format");
+                return false;
+            }
+            if (!in.readUTF().equals(layout.describe())) {
+                System.out.println("Ignoring index snapshot of " + layout.root() + ": storage layout changed");
+                return false;
+            }
+            boolean clean = in.readBoolean();
+            long savedEpoch = in.readLong();
+            long upTo = in.readLong();
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                long size = in.readLong();
+                long modifiedMillis = in.readLong();
+                long version = in.readLong();
+                String hash = in.readUTF();
+                long entrySequence = in.readLong();
+                files.put(name, new FileInfo(name, size, modifiedMillis, version, hash.isEmpty() ? null : hash, entrySequence));
+                sortedNames.add(name);
+                changes.put(entrySequence, name);
+                upTo = Math.max(upTo, entrySequence);
+            }
+
+            int cursors = in.readInt();
+            for (int i = 0; i < cursors; i++) {
+                peerCursors.put(in.readInt(), new PeerCursor(in.readLong(), in.readLong()));
+            }
+
+            sequence.set(upTo);
+            epoch = clean ? savedEpoch : newEpoch();
+            System.out.printf("Loaded index snapshot of %s: %d files%s%n", layout.root(), count,
+                    clean ? "" : ", not saved at shutdown, peers will compare full listings once");
+            return true;
+        } catch (IOException e) {
+            System.out.println("Ignoring index snapshot of " + layout.root() + ": " + e.getMessage());
+            files.clear();
+            sortedNames.clear();
+            changes.clear();
+            peerCursors.clear();
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (snapshots != null) {
+            snapshots.shutdownNow();
+            saveSnapshot(true);
+        }
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+}
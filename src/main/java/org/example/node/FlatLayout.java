@@ -0,0 +1,42 @@
+package org.example.node;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Original layout: every file directly under node_storage/<department>/
+public class FlatLayout implements StorageLayout {
+    private final Path root;
+
+    public FlatLayout(Path root) {
+        this.root = root;
+    }
+
+    @Override
+    public Path root() {
+        return root;
+    }
+
+    @Override
+    public Path resolve(String fileName) {
+        return root.resolve(fileName);
+    }
+
+    @Override
+    public Stream<Path> files() throws IOException {
+        return Files.list(root).filter(path -> !StorageLayout.isHidden(path) && Files.isRegularFile(path));
+    }
+
+    @Override
+    public List<Path> directories() {
+        return Collections.singletonList(root);
+    }
+
+    @Override
+    public String describe() {
+        return "flat";
+    }
+}
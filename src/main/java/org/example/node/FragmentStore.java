@@ -0,0 +1,147 @@
+package org.example.node;
+
+import org.example.model.Fragment;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/*
+ The erasure coded fragments this node holds, in <root>/.fragments/<name>/<generation>-<index>.
+ Each file is a small header (generation, shard counts, content length) followed by the shard
+ bytes. Writing a generation leaves older ones in place, the coordinator removes them with
+ deleteGenerations once every fragment of the new one is stored, so a failed overwrite never
+ costs the previous content. A fragment older than the newest generation stored is refused.
+ Fragments are hidden, so they are not indexed and not synced; the coordinator places them and
+ reads them back.
+ */
+public class FragmentStore {
+    public static final String FRAGMENTS_DIR = ".fragments";
+    private static final int LOCK_STRIPES = 64;
+
+    private final Path root;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public FragmentStore(Path storageRoot) {
+        this.root = storageRoot.resolve(FRAGMENTS_DIR);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    //False when the node already has a newer generation of the file
+    public boolean write(String fileName, Fragment fragment) throws IOException {
+        Path dir = root.resolve(fileName);
+        synchronized (lockFor(fileName)) {
+            for (Fragment stored : read(fileName)) {
+                if (stored.getGeneration() > fragment.getGeneration()) return false;
+            }
+
+            Files.createDirectories(dir);
+            String name = fragment.getGeneration() + "-" + fragment.getIndex();
+            Path target = dir.resolve(name);
+            Path temp = dir.resolve("." + name + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeLong(fragment.getGeneration());
+                out.writeInt(fragment.getIndex());
+                out.writeInt(fragment.getDataShards());
+                out.writeInt(fragment.getParityShards());
+                out.writeInt(fragment.getLength());
+                out.writeInt(fragment.getData().length);
+                out.write(fragment.getData());
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        }
+    }
+
+    //Every fragment of the file on this node, empty when there are none
+    public List<Fragment> read(String fileName) throws IOException {
+        Path dir = root.resolve(fileName);
+        List<Fragment> fragments = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return fragments;
+
+        try (Stream<Path> entries = Files.list(dir)) {
+            for (Path path : (Iterable<Path>) entries::iterator) {
+                if (StorageLayout.isHidden(path)) continue;
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                    long generation = in.readLong();
+                    int index = in.readInt();
+                    int dataShards = in.readInt();
+                    int parityShards = in.readInt();
+                    int length = in.readInt();
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    fragments.add(new Fragment(generation, index, dataShards, parityShards, length, data));
+                } catch (NoSuchFileException e) {
+                    //replaced by a newer generation while listing
+                }
+            }
+        }
+        return fragments;
+    }
+
+    //Remove the fragments of generations from..to inclusive, true when any were removed
+    public boolean deleteGenerations(String fileName, long fromGeneration, long toGeneration) throws IOException {
+        Path dir = root.resolve(fileName);
+        synchronized (lockFor(fileName)) {
+            if (!Files.isDirectory(dir)) return false;
+            boolean deleted = false;
+            try (Stream<Path> entries = Files.list(dir)) {
+                for (Path path : (Iterable<Path>) entries::iterator) {
+                    if (StorageLayout.isHidden(path)) continue;
+                    long generation;
+                    try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+                        generation = in.readLong();
+                    }
+                    if (generation >= fromGeneration && generation <= toGeneration) {
+                        deleted |= Files.deleteIfExists(path);
+                    }
+                }
+            }
+            try (Stream<Path> left = Files.list(dir)) {
+                if (!left.findAny().isPresent()) Files.deleteIfExists(dir);
+            }
+            return deleted;
+        }
+    }
+
+    public boolean delete(String fileName) throws IOException {
+        Path dir = root.resolve(fileName);
+        synchronized (lockFor(fileName)) {
+            if (!Files.isDirectory(dir)) return false;
+            try (Stream<Path> entries = Files.list(dir)) {
+                for (Path path : (Iterable<Path>) entries::iterator) {
+                    Files.deleteIfExists(path);
+                }
+            }
+            Files.deleteIfExists(dir);
+            return true;
+        }
+    }
+
+    //Names with fragments on this node, sorted, for listings
+    public List<String> names(String prefix, String after, int limit) throws IOException {
+        List<String> names = new ArrayList<>();
+        if (!Files.isDirectory(root)) return names;
+
+        TreeSet<String> sorted = new TreeSet<>();
+        try (Stream<Path> dirs = Files.list(root)) {
+            dirs.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && (after == null || name.compareTo(after) > 0))
+                    .forEach(sorted::add);
+        }
+        for (String name : sorted) {
+            if (names.size() >= limit) break;
+            names.add(name);
+        }
+        return names;
+    }
+
+    private Object lockFor(String fileName) {
+        return locks[Math.floorMod(fileName.hashCode(), LOCK_STRIPES)];
+    }
+}
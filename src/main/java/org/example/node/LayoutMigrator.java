@@ -0,0 +1,50 @@
+package org.example.node;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Moves a flat department directory into the sharded layout, run while the node is stopped
+public class LayoutMigrator {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java LayoutMigrator <department-dir> [levels] [width]");
+            return;
+        }
+
+        Path root = Paths.get(args[0]);
+        int levels = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int width = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+        Path marker = root.resolve(StorageLayout.MARKER);
+        if (Files.exists(marker) && !new String(Files.readAllBytes(marker), StandardCharsets.UTF_8).trim().equals("flat")) {
+            System.out.println(root + " is already sharded");
+            return;
+        }
+
+        ShardedLayout layout = new ShardedLayout(root, levels, width);
+        List<Path> flatFiles;
+        try (Stream<Path> entries = new FlatLayout(root).files()) {
+            flatFiles = entries.collect(Collectors.toList());
+        }
+
+        int moved = 0;
+        for (Path file : flatFiles) {
+            Path target = layout.resolve(file.getFileName().toString());
+            Files.createDirectories(target.getParent());
+            Files.move(file, target);
+            if (++moved % 10_000 == 0) {
+                System.out.println("Moved " + moved + " of " + flatFiles.size());
+            }
+        }
+
+        //Written last so an interrupted run is simply started again
+        Files.write(marker, layout.describe().getBytes(StandardCharsets.UTF_8));
+        System.out.println("Migrated " + moved + " files in " + root + " to " + layout.describe());
+    }
+}
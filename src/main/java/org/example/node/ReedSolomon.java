@@ -0,0 +1,192 @@
+package org.example.node;
+
+import java.util.Arrays;
+
+/*
+ Systematic Reed-Solomon code over GF(256): content is cut into k data shards of equal length
+ (the last one zero padded) and m parity shards are added, any k of the k + m shards give the
+ content back. The encoding matrix is a (k + m) x k Vandermonde matrix multiplied by the inverse
+ of its top k rows, so the top rows are the identity and data shards are stored unchanged.
+ Field polynomial x^8 + x^4 + x^3 + x^2 + 1 (0x11D).
+ */
+public class ReedSolomon {
+    private static final int[] EXP = new int[512];
+    private static final int[] LOG = new int[256];
+    private static final byte[][] MUL = new byte[256][256];
+
+    private final int dataShards;
+    private final int parityShards;
+    private final int[][] matrix;
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = x;
+            LOG[x] = i;
+            x <<= 1;
+            if ((x & 0x100) != 0) x ^= 0x11D;
+        }
+        for (int i = 255; i < EXP.length; i++) {
+            EXP[i] = EXP[i - 255];
+        }
+        for (int a = 0; a < 256; a++) {
+            for (int b = 0; b < 256; b++) {
+                MUL[a][b] = (byte) multiply(a, b);
+            }
+        }
+    }
+
+    public ReedSolomon(int dataShards, int parityShards) {
+        if (dataShards < 1 || parityShards < 0 || dataShards + parityShards > 256) {
+            throw new IllegalArgumentException("Unsupported shard counts " + dataShards + "+" + parityShards);
+        }
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+
+        int[][] vandermonde = new int[dataShards + parityShards][dataShards];
+        for (int row = 0; row < vandermonde.length; row++) {
+            for (int column = 0; column < dataShards; column++) {
+                vandermonde[row][column] = power(row, column);
+            }
+        }
+        this.matrix = multiply(vandermonde, invert(Arrays.copyOf(vandermonde, dataShards)));
+    }
+
+    public int dataShards() {
+        return dataShards;
+    }
+
+    public int parityShards() {
+        return parityShards;
+    }
+
+    //The k data shards followed by the m parity shards, each ceil(length / k) bytes
+    public byte[][] encode(byte[] content) {
+        int shardLength = Math.max(1, (content.length + dataShards - 1) / dataShards);
+        byte[][] shards = new byte[dataShards + parityShards][shardLength];
+        for (int i = 0; i < dataShards; i++) {
+            int from = i * shardLength;
+            if (from < content.length) {
+                System.arraycopy(content, from, shards[i], 0, Math.min(shardLength, content.length - from));
+            }
+        }
+        for (int row = dataShards; row < shards.length; row++) {
+            combine(matrix[row], shards, shards[row]);
+        }
+        return shards;
+    }
+
+    //Content of the given length from shards indexed like encode's result, missing ones null; needs any k
+    public byte[] decode(byte[][] shards, int length) {
+        int[] present = new int[dataShards];
+        int found = 0;
+        for (int i = 0; i < shards.length && found < dataShards; i++) {
+            if (shards[i] != null) present[found++] = i;
+        }
+        if (found < dataShards) {
+            throw new IllegalArgumentException("Need " + dataShards + " shards, only " + found + " available");
+        }
+
+        byte[][] data = new byte[dataShards][];
+        boolean missingData = false;
+        for (int i = 0; i < dataShards; i++) {
+            data[i] = shards[i];
+            missingData |= data[i] == null;
+        }
+        if (missingData) {
+            int[][] rows = new int[dataShards][];
+            byte[][] inputs = new byte[dataShards][];
+            for (int i = 0; i < dataShards; i++) {
+                rows[i] = matrix[present[i]];
+                inputs[i] = shards[present[i]];
+            }
+            int[][] decoding = invert(rows);
+            for (int i = 0; i < dataShards; i++) {
+                if (data[i] == null) {
+                    data[i] = new byte[inputs[0].length];
+                    combine(decoding[i], inputs, data[i]);
+                }
+            }
+        }
+
+        byte[] content = new byte[length];
+        int shardLength = data[0].length;
+        for (int i = 0, from = 0; i < dataShards && from < length; i++, from += shardLength) {
+            System.arraycopy(data[i], 0, content, from, Math.min(shardLength, length - from));
+        }
+        return content;
+    }
+
+    //output = sum of coefficients[i] * inputs[i], using the first coefficients.length inputs
+    private static void combine(int[] coefficients, byte[][] inputs, byte[] output) {
+        Arrays.fill(output, (byte) 0);
+        for (int i = 0; i < coefficients.length; i++) {
+            byte[] table = MUL[coefficients[i]];
+            byte[] input = inputs[i];
+            for (int j = 0; j < output.length; j++) {
+                output[j] ^= table[input[j] & 0xFF];
+            }
+        }
+    }
+
+    private static int multiply(int a, int b) {
+        return a == 0 || b == 0 ? 0 : EXP[LOG[a] + LOG[b]];
+    }
+
+    private static int power(int a, int n) {
+        if (n == 0) return 1;
+        if (a == 0) return 0;
+        return EXP[(LOG[a] * n) % 255];
+    }
+
+    private static int[][] multiply(int[][] left, int[][] right) {
+        int[][] product = new int[left.length][right[0].length];
+        for (int row = 0; row < left.length; row++) {
+            for (int column = 0; column < right[0].length; column++) {
+                int value = 0;
+                for (int i = 0; i < right.length; i++) {
+                    value ^= multiply(left[row][i], right[i][column]);
+                }
+                product[row][column] = value;
+            }
+        }
+        return product;
+    }
+
+    //Gauss-Jordan elimination, any k rows of the encoding matrix are invertible
+    private static int[][] invert(int[][] square) {
+        int size = square.length;
+        int[][] work = new int[size][2 * size];
+        for (int row = 0; row < size; row++) {
+            System.arraycopy(square[row], 0, work[row], 0, size);
+            work[row][size + row] = 1;
+        }
+
+        for (int column = 0; column < size; column++) {
+            int pivot = column;
+            while (pivot < size && work[pivot][column] == 0) pivot++;
+            if (pivot == size) throw new IllegalArgumentException("Matrix is singular");
+            int[] swap = work[pivot];
+            work[pivot] = work[column];
+            work[column] = swap;
+
+            int scale = EXP[255 - LOG[work[column][column]]];
+            for (int i = 0; i < 2 * size; i++) {
+                work[column][i] = multiply(work[column][i], scale);
+            }
+            for (int row = 0; row < size; row++) {
+                int factor = work[row][column];
+                if (row == column || factor == 0) continue;
+                for (int i = 0; i < 2 * size; i++) {
+                    work[row][i] ^= multiply(factor, work[column][i]);
+                }
+            }
+        }
+
+        int[][] inverse = new int[size][];
+        for (int row = 0; row < size; row++) {
+            inverse[row] = Arrays.copyOfRange(work[row], size, 2 * size);
+        }
+        return inverse;
+    }
+}
@@ -0,0 +1,87 @@
+package org.example.node;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ Spreads files over hash-prefix subdirectories: with 2 levels of width 2 "report.txt" lives in
+ <root>/3f/a9/report.txt, giving up to 65536 leaf directories. The hash only depends on the name,
+ so every node and the migration tool agree on where a file goes.
+ */
+public class ShardedLayout implements StorageLayout {
+    private final Path root;
+    private final int levels;
+    private final int width;
+
+    public ShardedLayout(Path root, int levels, int width) {
+        if (levels < 1 || width < 1 || levels * width > 8) {
+            throw new IllegalArgumentException("Shard levels * width must be between 1 and 8 hex digits");
+        }
+        this.root = root;
+        this.levels = levels;
+        this.width = width;
+    }
+
+    @Override
+    public Path root() {
+        return root;
+    }
+
+    @Override
+    public Path resolve(String fileName) {
+        String hex = String.format("%08x", hash(fileName));
+        Path dir = root;
+        for (int level = 0; level < levels; level++) {
+            dir = dir.resolve(hex.substring(level * width, (level + 1) * width));
+        }
+        return dir.resolve(fileName);
+    }
+
+    @Override
+    public Stream<Path> files() throws IOException {
+        return leafDirectories().flatMap(dir -> {
+            try {
+                return Files.list(dir);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).filter(path -> !StorageLayout.isHidden(path) && Files.isRegularFile(path));
+    }
+
+    @Override
+    public List<Path> directories() throws IOException {
+        try (Stream<Path> dirs = Files.walk(root, levels)) {
+            return dirs.filter(Files::isDirectory)
+                    .filter(dir -> dir.equals(root) || !StorageLayout.isHidden(root.relativize(dir).getName(0)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    //Only the directories exactly `levels` deep hold files
+    private Stream<Path> leafDirectories() throws IOException {
+        return Files.walk(root, levels)
+                .filter(dir -> dir.getNameCount() - root.getNameCount() == levels && Files.isDirectory(dir))
+                .filter(dir -> !StorageLayout.isHidden(root.relativize(dir).getName(0)));
+    }
+
+    @Override
+    public String describe() {
+        return "sharded " + levels + " " + width;
+    }
+
+    //Murmur3 finalizer over String.hashCode, stable across JVMs and well spread over the prefix bits
+    private static int hash(String fileName) {
+        int h = fileName.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
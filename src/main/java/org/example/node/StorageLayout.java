@@ -0,0 +1,66 @@
+package org.example.node;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*
+ Maps file names of a department to paths on disk. The layout of a department directory is
+ recorded in its ".layout" marker; directories without one use -Dstorage.layout (flat by default).
+ Hidden entries (starting with ".") belong to the node, not to users, and are never listed.
+ */
+public interface StorageLayout {
+    String MARKER = ".layout";
+
+    Path root();
+
+    Path resolve(String fileName);
+
+    //Every user file, streamed directory by directory
+    Stream<Path> files() throws IOException;
+
+    //Directories that currently hold files, used to register directory watches
+    List<Path> directories() throws IOException;
+
+    String describe();
+
+    static StorageLayout open(Path root) throws IOException {
+        Files.createDirectories(root);
+        Path marker = root.resolve(MARKER);
+        if (Files.exists(marker)) {
+            return parse(root, new String(Files.readAllBytes(marker), StandardCharsets.UTF_8).trim());
+        }
+
+        String configured = System.getProperty("storage.layout", "flat");
+        StorageLayout layout = parse(root, configured.equals("sharded")
+                ? "sharded " + Integer.getInteger("storage.shardLevels", 2) + " " + Integer.getInteger("storage.shardWidth", 2)
+                : "flat");
+        if (layout instanceof ShardedLayout) {
+            boolean hasFlatFiles;
+            try (Stream<Path> entries = Files.list(root)) {
+                hasFlatFiles = entries.anyMatch(path -> Files.isRegularFile(path) && !isHidden(path));
+            }
+            if (hasFlatFiles) {
+                System.out.println("Flat files found in " + root + ", run LayoutMigrator before switching to sharded. Using flat layout.");
+                return new FlatLayout(root);
+            }
+        }
+        Files.write(marker, layout.describe().getBytes(StandardCharsets.UTF_8));
+        return layout;
+    }
+
+    static StorageLayout parse(Path root, String description) {
+        String[] parts = description.split("\\s+");
+        if (parts[0].equals("sharded")) {
+            return new ShardedLayout(root, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        }
+        return new FlatLayout(root);
+    }
+
+    static boolean isHidden(Path path) {
+        return path.getFileName().toString().startsWith(".");
+    }
+}
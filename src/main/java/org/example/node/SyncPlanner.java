@@ -0,0 +1,20 @@
+package org.example.node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+// Decides which of a peer's files a node has to pull, shared by the RMI and socket nodes
+public class SyncPlanner {
+    private SyncPlanner() {
+    }
+
+    //Peer files the local node doesn't have, in the peer's order, present is expected to be an O(1) lookup
+    public static List<String> missing(String[] peerFiles, Predicate<String> present) {
+        List<String> missing = new ArrayList<>();
+        for (String fileName : peerFiles) {
+            if (!present.test(fileName)) missing.add(fileName);
+        }
+        return missing;
+    }
+}
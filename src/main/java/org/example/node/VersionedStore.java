@@ -0,0 +1,469 @@
+package org.example.node;
+
+import org.example.metrics.Histogram;
+import org.example.metrics.MetricsRegistry;
+import org.example.trace.Tracer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+ Every write commits a new immutable version: the content goes to a temp file, is renamed to
+ <root>/.versions/<name>/<number>, and the live file at layout.resolve(name) is swapped to it
+ with an atomic rename (hard link where the filesystem allows, copy otherwise). Readers open the
+ live file without any lock and see either the old or the new version, never a partial write.
+ Writers of the same name are serialized by a striped lock. A version is removed once it has been
+ superseded for longer than -Dversions.retentionMinutes (default 60); the newest version of a
+ deleted file expires the same way, counted from its own commit.
+ Version numbers are per node, a synced copy gets its own numbering on the receiving node.
+ With a ContentStore the version file is a hard link to a shared blob instead of its own copy,
+ so its mtime is the blob's; the commit time is kept in an empty .<number>.committed marker.
+ File bytes move in and out through BufferPool buffers, so a read allocates only the String it
+ returns and a write without a ContentStore nothing sized to the file; deduplicating writes still
+ encode the whole content to hash it.
+ */
+public class VersionedStore {
+    public static final String VERSIONS_DIR = ".versions";
+    private static final int LOCK_STRIPES = 256;
+    private static final long GC_INTERVAL_SECONDS = 60;
+    private static final int IO_CHUNK_BYTES = 1024 * 1024;
+    private static final ThreadLocal<char[]> charChunks = ThreadLocal.withInitial(() -> new char[16 * 1024]);
+
+    private final StorageLayout layout;
+    private final Path versionsRoot;
+    private final long retentionMillis;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final Map<String, Long> latestVersions = new ConcurrentHashMap<>();
+    private final ContentStore contentStore;
+    private final Map<String, CachedHash> hashes = new ConcurrentHashMap<>();
+    private final Histogram lockWaits = MetricsRegistry.global().histogram("node_lock_wait_seconds",
+            "Time writers waited for the per-name write lock");
+    private volatile boolean hardLinks = true;
+    private ScheduledExecutorService gc;
+
+    private interface VersionWriter {
+        //Create the version file at the given path, false when the content isn't available
+        boolean write(Path versionFile) throws IOException;
+    }
+
+    private static class CachedHash {
+        private final long modifiedMillis;
+        private final String hash;
+
+        CachedHash(long modifiedMillis, String hash) {
+            this.modifiedMillis = modifiedMillis;
+            this.hash = hash;
+        }
+    }
+
+    public VersionedStore(StorageLayout layout) {
+        this(layout, null);
+    }
+
+    public VersionedStore(StorageLayout layout, ContentStore contentStore) {
+        this.layout = layout;
+        this.contentStore = contentStore;
+        this.versionsRoot = layout.root().resolve(VERSIONS_DIR);
+        this.retentionMillis = TimeUnit.MINUTES.toMillis(Long.getLong("versions.retentionMinutes", 60));
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public void startGarbageCollector() {
+        gc = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "version-gc-" + layout.root().getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        gc.scheduleWithFixedDelay(this::collectGarbage, GC_INTERVAL_SECONDS, GC_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void stopGarbageCollector() {
+        if (gc != null) gc.shutdownNow();
+    }
+
+    //Commit content as the next version of the file and make it the live one, returns the version number
+    public long write(String fileName, String content) throws IOException {
+        if (contentStore != null) return write(fileName, content.getBytes(StandardCharsets.UTF_8));
+
+        return commit(fileName, null, versionFile -> writeVersion(versionFile, channel -> writeUtf8(channel, content)));
+    }
+
+    //Same as write(String, String) for content that is already UTF-8, as a transfer delivers it
+    public long write(String fileName, byte[] bytes) throws IOException {
+        if (contentStore != null) {
+            String hash = ContentStore.hash(bytes);
+            return commit(fileName, hash, versionFile -> {
+                contentStore.store(bytes, hash, versionFile);
+                return true;
+            });
+        }
+
+        return commit(fileName, null, versionFile -> writeVersion(versionFile, channel -> writeChunked(channel, bytes)));
+    }
+
+    private interface ChannelWriter {
+        void write(FileChannel channel) throws IOException;
+    }
+
+    private static boolean writeVersion(Path versionFile, ChannelWriter writer) throws IOException {
+        Path tempVersion = versionFile.resolveSibling("." + versionFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempVersion, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writer.write(channel);
+            channel.force(true);
+        }
+        Files.move(tempVersion, versionFile, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    //Encodes a chunk of chars at a time into pooled buffers, the same bytes getBytes(UTF_8) would give without a copy of the whole file
+    private static void writeUtf8(FileChannel channel, String content) throws IOException {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        char[] chars = charChunks.get();
+        CharBuffer in = CharBuffer.wrap(chars);
+        in.limit(0);
+        ByteBuffer encoded = BufferPool.heap().acquire(chars.length * 3);
+        ByteBuffer direct = BufferPool.direct().acquire(chars.length * 3);
+        try {
+            int offset = 0;
+            while (true) {
+                //a high surrogate left over from the last chunk stays in front of the next one
+                in.compact();
+                int count = Math.min(in.remaining(), content.length() - offset);
+                content.getChars(offset, offset + count, chars, in.position());
+                in.position(in.position() + count);
+                in.flip();
+                offset += count;
+                boolean last = offset == content.length();
+
+                encoded.clear();
+                encoder.encode(in, encoded, last);
+                encoded.flip();
+                direct.clear();
+                direct.put(encoded).flip();
+                while (direct.hasRemaining()) {
+                    channel.write(direct);
+                }
+                if (last && !in.hasRemaining()) return;
+            }
+        } finally {
+            BufferPool.heap().release(encoded);
+            BufferPool.direct().release(direct);
+        }
+    }
+
+    private static void writeChunked(FileChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer direct = BufferPool.direct().acquire(Math.min(bytes.length, IO_CHUNK_BYTES));
+        try {
+            for (int offset = 0; offset < bytes.length; ) {
+                int count = Math.min(direct.capacity(), bytes.length - offset);
+                direct.clear();
+                direct.put(bytes, offset, count).flip();
+                offset += count;
+                while (direct.hasRemaining()) {
+                    channel.write(direct);
+                }
+            }
+        } finally {
+            BufferPool.direct().release(direct);
+        }
+    }
+
+    //Byte length of the content in UTF-8 without encoding it, a lone surrogate counts as the one byte '?' it becomes
+    public static long utf8Length(String content) {
+        long length = 0;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < content.length() && Character.isLowSurrogate(content.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    //Commit a new version from a blob this node already stores, -1 when the content isn't here
+    public long writeExisting(String fileName, String hash) throws IOException {
+        if (contentStore == null || !contentStore.contains(hash)) return -1;
+
+        return commit(fileName, hash, versionFile -> contentStore.linkExisting(hash, versionFile));
+    }
+
+    public boolean deduplicates() {
+        return contentStore != null;
+    }
+
+    //SHA-256 of the live content, cached until the file changes, null when the file doesn't exist
+    public String contentHash(String fileName) throws IOException {
+        Path live = layout.resolve(fileName);
+        long modified = modifiedMillis(live);
+        if (modified < 0) return null;
+
+        CachedHash cached = hashes.get(fileName);
+        if (cached != null && cached.modifiedMillis == modified) return cached.hash;
+
+        String hash;
+        try {
+            hash = ContentStore.hash(live);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        hashes.put(fileName, new CachedHash(modified, hash));
+        return hash;
+    }
+
+    //The cached hash if it was taken at this mtime, never reads the file
+    public String cachedHash(String fileName, long modifiedMillis) {
+        CachedHash cached = hashes.get(fileName);
+        return cached != null && cached.modifiedMillis == modifiedMillis ? cached.hash : null;
+    }
+
+    //A hash known from elsewhere (the index snapshot), used only while the file keeps this mtime
+    public void seedHash(String fileName, long modifiedMillis, String hash) {
+        hashes.putIfAbsent(fileName, new CachedHash(modifiedMillis, hash));
+    }
+
+    //knownHash is cached under the lock so it always matches the live file's mtime
+    private long commit(String fileName, String knownHash, VersionWriter writer) throws IOException {
+        Path live = layout.resolve(fileName);
+        Path versionDir = versionsRoot.resolve(fileName);
+
+        long waitStart = System.nanoTime();
+        synchronized (lockFor(fileName)) {
+            lockWaits.recordSince(waitStart);
+            Tracer.span("lock-wait", waitStart);
+            Files.createDirectories(versionDir);
+            Files.createDirectories(live.getParent());
+            long version = latestVersion(fileName) + 1;
+
+            long writeStart = System.nanoTime();
+            Path versionFile = versionDir.resolve(Long.toString(version));
+            if (!writer.write(versionFile)) return -1;
+            if (contentStore != null) Files.write(committedMarker(versionFile), new byte[0]);
+            Tracer.span("write-version", writeStart);
+
+            long swapStart = System.nanoTime();
+            Path tempLive = live.resolveSibling("." + fileName + ".tmp");
+            Files.deleteIfExists(tempLive);
+            link(tempLive, versionFile);
+            Files.move(tempLive, live, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Tracer.span("swap-live", swapStart);
+            if (knownHash != null) {
+                hashes.put(fileName, new CachedHash(modifiedMillis(live), knownHash));
+            }
+
+            latestVersions.put(fileName, version);
+            return version;
+        }
+    }
+
+    //Versions written before markers existed, and all versions without a ContentStore, carry it as their mtime
+    private static long committedMillis(Path versionFile) throws IOException {
+        Path marker = committedMarker(versionFile);
+        return Files.getLastModifiedTime(Files.exists(marker) ? marker : versionFile).toMillis();
+    }
+
+    private static Path committedMarker(Path versionFile) {
+        return versionFile.resolveSibling("." + versionFile.getFileName() + ".committed");
+    }
+
+    private static long modifiedMillis(Path path) throws IOException {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (NoSuchFileException e) {
+            return -1;
+        }
+    }
+
+    //Lock-free read of the latest committed version, null when the file doesn't exist
+    public String read(String fileName) throws IOException {
+        return readString(layout.resolve(fileName));
+    }
+
+    //A specific version while it is still retained, null when it is unknown or collected
+    public String read(String fileName, long version) throws IOException {
+        return readString(versionsRoot.resolve(fileName).resolve(Long.toString(version)));
+    }
+
+    //The latest committed version as UTF-8 bytes for a transfer, null when the file doesn't exist
+    public byte[] readBytes(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(layout.resolve(fileName), StandardOpenOption.READ)) {
+            byte[] bytes = new byte[fileSize(channel)];
+            ByteBuffer target = ByteBuffer.wrap(bytes);
+            readChunked(channel, target);
+            return target.hasRemaining() ? Arrays.copyOf(bytes, target.position()) : bytes;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    //The bytes pass a pooled direct buffer and a pooled heap buffer, the String is the only allocation sized to the file
+    private static String readString(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer target = BufferPool.heap().acquire(fileSize(channel));
+            try {
+                readChunked(channel, target);
+                return new String(target.array(), 0, target.position(), StandardCharsets.UTF_8);
+            } finally {
+                BufferPool.heap().release(target);
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static int fileSize(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE - 8) throw new IOException("File of " + size + " bytes is too large to read at once");
+        return (int) size;
+    }
+
+    //Fills target from the channel through one pooled direct buffer, stops early if the file got shorter
+    private static void readChunked(FileChannel channel, ByteBuffer target) throws IOException {
+        ByteBuffer direct = BufferPool.direct().acquire(Math.min(target.remaining(), IO_CHUNK_BYTES));
+        try {
+            while (target.hasRemaining()) {
+                direct.clear();
+                direct.limit(Math.min(direct.capacity(), target.remaining()));
+                if (channel.read(direct) < 0) break;
+                direct.flip();
+                target.put(direct);
+            }
+        } finally {
+            BufferPool.direct().release(direct);
+        }
+    }
+
+    //Removes the live file, retained versions stay readable until the garbage collector takes them
+    public boolean delete(String fileName) throws IOException {
+        long waitStart = System.nanoTime();
+        synchronized (lockFor(fileName)) {
+            lockWaits.recordSince(waitStart);
+            Tracer.span("lock-wait", waitStart);
+            hashes.remove(fileName);
+            return Files.deleteIfExists(layout.resolve(fileName));
+        }
+    }
+
+    //Retained version numbers of the file, oldest first
+    public List<Long> versions(String fileName) throws IOException {
+        Path versionDir = versionsRoot.resolve(fileName);
+        if (!Files.isDirectory(versionDir)) return Collections.emptyList();
+
+        List<Long> versions = new ArrayList<>();
+        try (Stream<Path> entries = Files.list(versionDir)) {
+            entries.map(path -> path.getFileName().toString())
+                    .filter(name -> !name.startsWith("."))
+                    .forEach(name -> versions.add(Long.parseLong(name)));
+        }
+        Collections.sort(versions);
+        return versions;
+    }
+
+    private long latestVersion(String fileName) throws IOException {
+        Long known = latestVersions.get(fileName);
+        if (known != null) return known;
+        List<Long> versions = versions(fileName);
+        return versions.isEmpty() ? 0 : versions.get(versions.size() - 1);
+    }
+
+    private void link(Path link, Path target) throws IOException {
+        if (hardLinks) {
+            try {
+                Files.createLink(link, target);
+                return;
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                System.out.println("Hard links unavailable in " + versionsRoot + ", copying versions instead");
+                hardLinks = false;
+            }
+        }
+        Files.copy(target, link, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Object lockFor(String fileName) {
+        return locks[Math.floorMod(fileName.hashCode(), LOCK_STRIPES)];
+    }
+
+    //Drop versions superseded before the cutoff, always keeping the newest one of a file that still exists
+    public void collectGarbage() {
+        if (!Files.isDirectory(versionsRoot)) return;
+
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        int removed = 0;
+        try (Stream<Path> dirs = Files.list(versionsRoot)) {
+            for (Path versionDir : (Iterable<Path>) dirs::iterator) {
+                String fileName = versionDir.getFileName().toString();
+                synchronized (lockFor(fileName)) {
+                    List<Long> versions = versions(fileName);
+                    boolean live = Files.exists(layout.resolve(fileName));
+                    for (int i = 0; i < versions.size(); i++) {
+                        if (live && i == versions.size() - 1) break;
+                        Path versionFile = versionDir.resolve(Long.toString(versions.get(i)));
+                        Path supersededBy = i + 1 < versions.size()
+                                ? versionDir.resolve(Long.toString(versions.get(i + 1)))
+                                : versionFile;
+                        if (committedMillis(supersededBy) < cutoff) {
+                            Files.delete(versionFile);
+                            Files.deleteIfExists(committedMarker(versionFile));
+                            removed++;
+                        }
+                    }
+                    if (!live && versions(fileName).isEmpty()) {
+                        try (Stream<Path> leftovers = Files.list(versionDir)) {
+                            leftovers.forEach(this::deleteQuietly);
+                        }
+                        Files.delete(versionDir);
+                        latestVersions.remove(fileName);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Version garbage collection failed: " + e.getMessage());
+        }
+        if (removed > 0) {
+            System.out.println("Removed " + removed + " expired versions from " + versionsRoot);
+        }
+        if (contentStore != null) {
+            int blobs = contentStore.collectGarbage();
+            if (blobs > 0) {
+                System.out.println("Removed " + blobs + " unreferenced blobs, " + contentStore.stats());
+            }
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.out.println("Failed to delete " + path + ": " + e.getMessage());
+        }
+    }
+}
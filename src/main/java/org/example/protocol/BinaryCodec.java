@@ -0,0 +1,330 @@
+package org.example.protocol;
+
+import org.example.model.CommandResponse;
+import org.example.model.CommandType;
+import org.example.model.FileCommand;
+import org.example.model.FileListPage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ Compact encoding for FileCommand and CommandResponse.
+ Command: version, flags, requestId (varlong), type ordinal (varint), then fileName, department,
+ content, requestedBy, authToken and cursor as strings, limit as a zigzag varint, version as a
+ varlong and traceId as a string. A string is varint (length + 1) followed by UTF-8 bytes,
+ 0 means null. Lengths, counts and ordinals are never negative, a frame claiming one is rejected. With FLAG_CONTENT_DEFLATED the content is a varint raw length followed by the
+ deflated bytes in the same (length + 1) form. Response: version, requestId, a status byte (1 when
+ failed), a value tag and the value.
+ */
+public class BinaryCodec {
+    public static final int MAGIC = 0xB1;
+    public static final byte VERSION = 7;
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+    //Capability bits exchanged in the handshake
+    public static final int CAPABILITY_DEFLATE = 1;
+
+    private static final byte FLAG_CONTENT_DEFLATED = 1;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_BOOLEAN = 2;
+    private static final byte TAG_STRING_ARRAY = 3;
+    private static final byte TAG_DEFLATED_STRING = 4;
+    private static final byte TAG_FILE_LIST_PAGE = 5;
+
+    private static final CommandType[] COMMAND_TYPES = CommandType.values();
+
+    public static byte[] encodeCommand(FileCommand command) {
+        return encodeCommand(command, false);
+    }
+
+    public static byte[] encodeCommand(FileCommand command, boolean compress) {
+        byte[] content = command.getContent() == null ? null : command.getContent().getBytes(StandardCharsets.UTF_8);
+        byte[] deflated = compress && content != null ? Compression.deflate(content) : null;
+
+        Writer writer = new Writer(64 + (deflated != null ? deflated.length : content != null ? content.length : 0));
+        writer.writeByte(VERSION);
+        writer.writeByte(deflated != null ? FLAG_CONTENT_DEFLATED : 0);
+        writer.writeVarLong(command.getRequestId());
+        writer.writeVarInt(command.getType().ordinal());
+        writer.writeString(command.getFileName());
+        writer.writeString(command.getDepartment());
+        if (deflated != null) {
+            writer.writeDeflated(deflated, content.length);
+        } else {
+            writer.writeBytes(content);
+        }
+        writer.writeString(command.getRequestedBy());
+        writer.writeString(command.getAuthToken());
+        writer.writeString(command.getCursor());
+        writer.writeSignedVarInt(command.getLimit());
+        writer.writeVarLong(command.getVersion());
+        writer.writeString(command.getTraceId());
+        return writer.toByteArray();
+    }
+
+    public static FileCommand decodeCommand(byte[] frame) throws IOException {
+        Reader reader = new Reader(frame);
+        reader.readVersion();
+        byte flags = reader.readByte();
+        long requestId = reader.readVarLong();
+        int ordinal = reader.readVarInt();
+        if (ordinal >= COMMAND_TYPES.length) {
+            throw new IOException("Unknown command type ordinal: " + ordinal);
+        }
+        String fileName = reader.readString();
+        String department = reader.readString();
+        String content = (flags & FLAG_CONTENT_DEFLATED) != 0 ? reader.readDeflated() : reader.readString();
+        FileCommand command = new FileCommand(COMMAND_TYPES[ordinal], fileName, department, content, reader.readString());
+        command.setRequestId(requestId);
+        command.setAuthToken(reader.readString());
+        command.setCursor(reader.readString());
+        command.setLimit(reader.readSignedVarInt());
+        command.setVersion(reader.readVarLong());
+        command.setTraceId(reader.readString());
+        return command;
+    }
+
+    public static byte[] encodeResponse(CommandResponse response) {
+        return encodeResponse(response, false);
+    }
+
+    public static byte[] encodeResponse(CommandResponse response, boolean compress) {
+        Object result = response.getResult();
+        Writer writer = new Writer(32 + (result instanceof String ? length((String) result) : 0));
+        writer.writeByte(VERSION);
+        writer.writeVarLong(response.getRequestId());
+        writer.writeByte(response.isFailed() ? 1 : 0);
+        writeValue(writer, result, compress);
+        return writer.toByteArray();
+    }
+
+    public static CommandResponse decodeResponse(byte[] frame) throws IOException {
+        Reader reader = new Reader(frame);
+        reader.readVersion();
+        long requestId = reader.readVarLong();
+        boolean failed = reader.readByte() != 0;
+        return new CommandResponse(requestId, readValue(reader), failed);
+    }
+
+    private static void writeValue(Writer writer, Object value, boolean compress) {
+        if (value == null) {
+            writer.writeByte(TAG_NULL);
+        } else if (value instanceof Boolean) {
+            writer.writeByte(TAG_BOOLEAN);
+            writer.writeByte((Boolean) value ? 1 : 0);
+        } else if (value instanceof String[]) {
+            String[] values = (String[]) value;
+            writer.writeByte(TAG_STRING_ARRAY);
+            writer.writeVarInt(values.length);
+            for (String item : values) {
+                writer.writeString(item);
+            }
+        } else if (value instanceof FileListPage) {
+            FileListPage page = (FileListPage) value;
+            writer.writeByte(TAG_FILE_LIST_PAGE);
+            writer.writeVarInt(page.getNames().size());
+            for (String name : page.getNames()) {
+                writer.writeString(name);
+            }
+            writer.writeString(page.getNextCursor());
+        } else {
+            byte[] raw = value.toString().getBytes(StandardCharsets.UTF_8);
+            byte[] deflated = compress ? Compression.deflate(raw) : null;
+            if (deflated != null) {
+                writer.writeByte(TAG_DEFLATED_STRING);
+                writer.writeDeflated(deflated, raw.length);
+            } else {
+                writer.writeByte(TAG_STRING);
+                writer.writeBytes(raw);
+            }
+        }
+    }
+
+    private static Object readValue(Reader reader) throws IOException {
+        byte tag = reader.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return reader.readString();
+            case TAG_BOOLEAN:
+                return reader.readByte() != 0;
+            case TAG_STRING_ARRAY:
+                String[] values = new String[reader.readCount()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = reader.readString();
+                }
+                return values;
+            case TAG_DEFLATED_STRING:
+                return reader.readDeflated();
+            case TAG_FILE_LIST_PAGE:
+                int count = reader.readCount();
+                List<String> names = new ArrayList<>(Math.min(count, 4096));
+                for (int i = 0; i < count; i++) {
+                    names.add(reader.readString());
+                }
+                return new FileListPage(names, reader.readString());
+            default:
+                throw new IOException("Unknown value tag: " + tag);
+        }
+    }
+
+    //Upper bound guess used to size the buffer, content is usually the only large field
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static class Writer {
+        private byte[] buffer;
+        private int position;
+
+        Writer(int initialSize) {
+            buffer = new byte[initialSize];
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarInt(int value) {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        //Zigzag keeps small negative values short and lets readVarInt reject negative lengths
+        void writeSignedVarInt(int value) {
+            writeVarInt((value << 1) ^ (value >> 31));
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            writeBytes(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void writeDeflated(byte[] deflated, int rawLength) {
+            writeVarInt(rawLength);
+            writeBytes(deflated);
+        }
+
+        void writeBytes(byte[] bytes) {
+            if (bytes == null) {
+                writeVarInt(0);
+                return;
+            }
+            writeVarInt(bytes.length + 1);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return position == buffer.length ? buffer : Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static class Reader {
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        void readVersion() throws IOException {
+            byte version = readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported protocol version: " + version);
+            }
+        }
+
+        byte readByte() throws IOException {
+            if (position >= buffer.length) {
+                throw new IOException("Truncated frame");
+            }
+            return buffer[position++];
+        }
+
+        //Unsigned, for lengths, counts and ordinals
+        int readVarInt() throws IOException {
+            long value = readVarLong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IOException("Varint out of range: " + value);
+            }
+            return (int) value;
+        }
+
+        int readSignedVarInt() throws IOException {
+            long value = readVarLong();
+            if (value < 0 || value > 0xFFFFFFFFL) {
+                throw new IOException("Varint out of range: " + value);
+            }
+            int zigzag = (int) value;
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        //Every counted item takes at least one byte, so a count beyond the frame is a lie
+        int readCount() throws IOException {
+            int count = readVarInt();
+            if (count > buffer.length - position) {
+                throw new IOException("Count " + count + " exceeds the frame");
+            }
+            return count;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        String readString() throws IOException {
+            int length = readVarInt();
+            if (length == 0) {
+                return null;
+            }
+            length--;
+            if (length > buffer.length - position) {
+                throw new IOException("Truncated frame");
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        String readDeflated() throws IOException {
+            int rawLength = readVarInt();
+            int length = readVarInt() - 1;
+            if (length < 0 || length > buffer.length - position) {
+                throw new IOException("Truncated frame");
+            }
+            byte[] deflated = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return new String(Compression.inflate(deflated, rawLength, MAX_FRAME_SIZE), StandardCharsets.UTF_8);
+        }
+    }
+}
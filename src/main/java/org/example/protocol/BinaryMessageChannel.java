@@ -0,0 +1,61 @@
+package org.example.protocol;
+
+import org.example.model.CommandResponse;
+import org.example.model.FileCommand;
+
+import java.io.*;
+
+// Length-prefixed frames holding BinaryCodec messages
+public class BinaryMessageChannel implements MessageChannel {
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final boolean compress;
+
+    //compress is the outcome of the handshake, the peer can always decode deflated frames it agreed to
+    public BinaryMessageChannel(InputStream in, OutputStream out, boolean compress) {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.compress = compress;
+    }
+
+    @Override
+    public void writeCommand(FileCommand command) throws IOException {
+        writeFrame(BinaryCodec.encodeCommand(command, compress));
+    }
+
+    @Override
+    public FileCommand readCommand() throws IOException {
+        return BinaryCodec.decodeCommand(readFrame());
+    }
+
+    @Override
+    public void writeResponse(CommandResponse response) throws IOException {
+        writeFrame(BinaryCodec.encodeResponse(response, compress));
+    }
+
+    @Override
+    public CommandResponse readResponse() throws IOException {
+        return BinaryCodec.decodeResponse(readFrame());
+    }
+
+    private void writeFrame(byte[] frame) throws IOException {
+        out.writeInt(frame.length);
+        out.write(frame);
+        out.flush();
+    }
+
+    private byte[] readFrame() throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > BinaryCodec.MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return frame;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,105 @@
+package org.example.protocol;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Deflate helper for file payloads, skips content that is too small or doesn't shrink enough
+public class Compression {
+    public static final int MIN_SIZE = 1024;
+    //Keep the compressed form only if it saves at least 10%
+    private static final double MAX_RATIO = 0.9;
+
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+    private static final LongAdder compressedTransfers = new LongAdder();
+    private static final LongAdder skippedSmall = new LongAdder();
+    private static final LongAdder skippedIncompressible = new LongAdder();
+    private static final LongAdder rawBytes = new LongAdder();
+    private static final LongAdder wireBytes = new LongAdder();
+
+    //Returns the deflated bytes, or null when the raw bytes should be sent as they are
+    public static byte[] deflate(byte[] raw) {
+        if (raw.length < MIN_SIZE) {
+            skippedSmall.increment();
+            return null;
+        }
+
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+
+        int limit = (int) (raw.length * MAX_RATIO);
+        byte[] out = new byte[limit];
+        int length = 0;
+        while (!deflater.finished() && length < limit) {
+            length += deflater.deflate(out, length, limit - length);
+        }
+        if (!deflater.finished()) {
+            skippedIncompressible.increment();
+            return null;
+        }
+
+        compressedTransfers.increment();
+        rawBytes.add(raw.length);
+        wireBytes.add(length);
+        byte[] result = new byte[length];
+        System.arraycopy(out, 0, result, 0, length);
+        return result;
+    }
+
+    public static byte[] inflate(byte[] compressed, int rawLength) throws IOException {
+        return inflate(compressed, rawLength, Integer.MAX_VALUE - 8);
+    }
+
+    //rawLength comes from the sender, so the output grows with what actually inflates instead of being allocated up front
+    public static byte[] inflate(byte[] compressed, int rawLength, int maxLength) throws IOException {
+        if (rawLength < 0 || rawLength > maxLength) {
+            throw new IOException("Compressed payload claims " + rawLength + " bytes, limit is " + maxLength);
+        }
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(compressed);
+
+        byte[] raw = new byte[(int) Math.min(rawLength, 4L * compressed.length + 64)];
+        try {
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                if (length == raw.length) {
+                    raw = Arrays.copyOf(raw, (int) Math.min(rawLength, 2L * raw.length));
+                }
+                int read = inflater.inflate(raw, length, raw.length - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += read;
+            }
+            if (length != rawLength) {
+                throw new IOException("Compressed payload is " + length + " bytes, expected " + rawLength);
+            }
+            if (!inflater.finished() && inflater.inflate(new byte[1]) > 0) {
+                throw new IOException("Compressed payload is longer than the " + rawLength + " bytes it claims");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed payload: " + e.getMessage(), e);
+        }
+        return raw;
+    }
+
+    public static double ratio(int rawLength, int compressedLength) {
+        return compressedLength == 0 ? 0 : (double) rawLength / compressedLength;
+    }
+
+    public static String stats() {
+        long raw = rawBytes.sum();
+        long wire = wireBytes.sum();
+        return String.format("compressed=%d skippedSmall=%d skippedIncompressible=%d raw=%dB wire=%dB ratio=%.2f",
+                compressedTransfers.sum(), skippedSmall.sum(), skippedIncompressible.sum(), raw, wire,
+                wire == 0 ? 0.0 : (double) raw / wire);
+    }
+}
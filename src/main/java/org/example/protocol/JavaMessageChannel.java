@@ -0,0 +1,62 @@
+package org.example.protocol;
+
+import org.example.model.CommandResponse;
+import org.example.model.FileCommand;
+
+import java.io.*;
+
+// Original format: ObjectStreams, reset after each message so long sessions don't keep every object alive
+public class JavaMessageChannel implements MessageChannel {
+    private final ObjectOutputStream out;
+    private final InputStream rawIn;
+    private ObjectInputStream in;
+
+    public JavaMessageChannel(InputStream in, OutputStream out) throws IOException {
+        this.out = new ObjectOutputStream(new BufferedOutputStream(out));
+        this.out.flush();
+        this.rawIn = in;
+    }
+
+    @Override
+    public void writeCommand(FileCommand command) throws IOException {
+        writeObject(command);
+    }
+
+    @Override
+    public FileCommand readCommand() throws IOException {
+        return (FileCommand) readObject();
+    }
+
+    @Override
+    public void writeResponse(CommandResponse response) throws IOException {
+        writeObject(response);
+    }
+
+    @Override
+    public CommandResponse readResponse() throws IOException {
+        return (CommandResponse) readObject();
+    }
+
+    private void writeObject(Object message) throws IOException {
+        out.writeObject(message);
+        out.reset();
+        out.flush();
+    }
+
+    //The stream header is read lazily so both peers can create their channels without deadlocking
+    private Object readObject() throws IOException {
+        if (in == null) {
+            in = new ObjectInputStream(new BufferedInputStream(rawIn));
+        }
+        try {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown message class: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,18 @@
+package org.example.protocol;
+
+import org.example.model.CommandResponse;
+import org.example.model.FileCommand;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// One side of a socket speaking FileCommand requests and CommandResponse answers in some wire format
+public interface MessageChannel extends Closeable {
+    void writeCommand(FileCommand command) throws IOException;
+
+    FileCommand readCommand() throws IOException;
+
+    void writeResponse(CommandResponse response) throws IOException;
+
+    CommandResponse readResponse() throws IOException;
+}
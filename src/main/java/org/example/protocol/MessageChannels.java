@@ -0,0 +1,69 @@
+package org.example.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.Socket;
+
+/*
+ Opens channels on sockets, the server side detects the format from the first byte the peer sends.
+ Binary handshake: the client sends MAGIC and its capability bits, the server answers with the
+ bits both sides support. Compression can be turned off with -Dwire.compression=false.
+ */
+public class MessageChannels {
+    private static final int JAVA_STREAM_MAGIC = 0xAC;
+    private static final int LOCAL_CAPABILITIES =
+            Boolean.parseBoolean(System.getProperty("wire.compression", "true")) ? BinaryCodec.CAPABILITY_DEFLATE : 0;
+
+    public static MessageChannel connect(Socket socket, WireFormat format) throws IOException {
+        if (format == WireFormat.BINARY) {
+            OutputStream out = socket.getOutputStream();
+            out.write(new byte[]{(byte) BinaryCodec.MAGIC, (byte) LOCAL_CAPABILITIES});
+            out.flush();
+
+            int accepted = socket.getInputStream().read();
+            if (accepted == -1) {
+                throw new IOException("Connection closed during handshake");
+            }
+            return new BinaryMessageChannel(socket.getInputStream(), out, compressionAgreed(accepted));
+        }
+        return new JavaMessageChannel(socket.getInputStream(), socket.getOutputStream());
+    }
+
+    public static MessageChannel accept(Socket socket) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(socket.getInputStream(), 1);
+        int first = in.read();
+        if (first == -1) {
+            throw new IOException("Connection closed before the first message");
+        }
+        if (first == BinaryCodec.MAGIC) {
+            int accepted = acceptCapabilities(in);
+            socket.getOutputStream().write(accepted);
+            socket.getOutputStream().flush();
+            return new BinaryMessageChannel(in, socket.getOutputStream(), compressionAgreed(accepted));
+        }
+        if (first != JAVA_STREAM_MAGIC) {
+            throw new IOException("Unknown wire format, first byte " + first);
+        }
+        in.unread(first);
+        return new JavaMessageChannel(in, socket.getOutputStream());
+    }
+
+    //Server half of the handshake: reads the client's capabilities and keeps the ones we support
+    public static int acceptCapabilities(InputStream in) throws IOException {
+        int requested = in.read();
+        if (requested == -1) {
+            throw new IOException("Connection closed during handshake");
+        }
+        return acceptCapabilities(requested);
+    }
+
+    public static int acceptCapabilities(int requested) {
+        return requested & LOCAL_CAPABILITIES;
+    }
+
+    public static boolean compressionAgreed(int capabilities) {
+        return (capabilities & BinaryCodec.CAPABILITY_DEFLATE) != 0;
+    }
+}
@@ -0,0 +1,330 @@
+package org.example.protocol;
+
+import org.example.model.CommandResponse;
+import org.example.model.FileCommand;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.SequenceInputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ Non-blocking front end: a few event loops accept connections, do the binary handshake, cut
+ frames out of the byte stream and write queued responses, all without a thread per client.
+ Decoded commands go to the CommandHandler, which is expected to hand them to a worker pool.
+ Java serialization clients can't be framed without blocking reads, so their connections are
+ switched back to blocking mode and given to the legacy handler on a thread of their own.
+ A connection's read buffer grows with the bytes that actually arrive, never straight to the length
+ a frame header claims. Once more than -Dnio.maxOutboundBytes (default 8 MB) of responses wait for a
+ client, its connection stops reading commands until half of that has been written.
+ */
+public class NioServer {
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final long MAX_OUTBOUND_BYTES = Long.getLong("nio.maxOutboundBytes", 8L * 1024 * 1024);
+
+    private final int port;
+    private final CommandHandler handler;
+    private final LegacyHandler legacyHandler;
+    private final EventLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private ServerSocketChannel serverChannel;
+
+    public interface CommandHandler {
+        void handle(FileCommand command, ResponseSink sink);
+    }
+
+    public interface LegacyHandler {
+        void handle(Socket socket, MessageChannel channel);
+    }
+
+    public NioServer(int port, int eventLoops, CommandHandler handler, LegacyHandler legacyHandler) {
+        this.port = port;
+        this.handler = handler;
+        this.legacyHandler = legacyHandler;
+        this.loops = new EventLoop[eventLoops];
+    }
+
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+        }
+        loops[0].register(serverChannel, SelectionKey.OP_ACCEPT, null);
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    //Client channels are closed by their loop as it exits
+    public void stop() throws IOException {
+        for (EventLoop loop : loops) {
+            loop.running = false;
+            loop.selector.wakeup();
+        }
+        serverChannel.close();
+    }
+
+    private class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private volatile boolean running = true;
+
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "nio-loop-" + index);
+        }
+
+        //Registration and interest changes run on the loop thread to keep the selector single-threaded
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(SelectableChannel channel, int ops, Object attachment) {
+            execute(() -> {
+                try {
+                    channel.register(selector, ops, attachment);
+                } catch (ClosedChannelException e) {
+                    System.out.println("Channel closed before registration");
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            System.out.println("Event loop task failed: " + e);
+                        }
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) continue;
+
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable()) connection.onReadable();
+                            if (key.isValid() && key.isWritable()) connection.onWritable();
+                        } catch (IOException e) {
+                            connection.close();
+                        } catch (RuntimeException e) {
+                            //A malformed frame or a failing handler costs only this client its connection
+                            System.out.println("Closing client connection after error: " + e);
+                            connection.close();
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("Event loop error: " + e);
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) ((Connection) key.attachment()).close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.out.println("Failed to close selector: " + e.getMessage());
+            }
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+                SocketChannel accepted = channel;
+                loop.execute(() -> loop.attach(accepted));
+            }
+        }
+
+        private void attach(SocketChannel channel) {
+            try {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new Connection(this, channel, key));
+            } catch (ClosedChannelException e) {
+                System.out.println("Client disconnected before registration");
+            }
+        }
+    }
+
+    private class Connection implements ResponseSink {
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean writeScheduled = new AtomicBoolean();
+        private final AtomicLong outboundBytes = new AtomicLong();
+        private final AtomicBoolean readPaused = new AtomicBoolean();
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private boolean handshakeDone;
+        private boolean compress;
+
+        Connection(EventLoop loop, SocketChannel channel, SelectionKey key) {
+            this.loop = loop;
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void onReadable() throws IOException {
+            int read = channel.read(readBuffer);
+            if (read == -1) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            try {
+                if (!handshakeDone && !handshake()) return;
+                readFrames();
+            } finally {
+                if (channel.isOpen() && key.isValid()) {
+                    readBuffer.compact();
+                }
+            }
+        }
+
+        //Returns false while the handshake is incomplete or the connection was handed off
+        private boolean handshake() throws IOException {
+            if (!readBuffer.hasRemaining()) return false;
+
+            int first = readBuffer.get(readBuffer.position()) & 0xFF;
+            if (first != BinaryCodec.MAGIC) {
+                handOffToLegacy();
+                return false;
+            }
+            if (readBuffer.remaining() < 2) return false;
+
+            readBuffer.get();
+            int accepted = MessageChannels.acceptCapabilities(readBuffer.get() & 0xFF);
+            compress = MessageChannels.compressionAgreed(accepted);
+            handshakeDone = true;
+            enqueue(ByteBuffer.wrap(new byte[]{(byte) accepted}));
+            return true;
+        }
+
+        private void readFrames() throws IOException {
+            while (readBuffer.remaining() >= 4) {
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length < 0 || length > BinaryCodec.MAX_FRAME_SIZE) {
+                    throw new IOException("Invalid frame length: " + length);
+                }
+                if (readBuffer.remaining() < 4 + length) {
+                    growFor(4 + length);
+                    return;
+                }
+                readBuffer.getInt();
+                byte[] frame = new byte[length];
+                readBuffer.get(frame);
+                handler.handle(BinaryCodec.decodeCommand(frame), this);
+            }
+        }
+
+        //Double the buffer once it is full, up to the frame size, so a bare length header costs nothing; the buffer is in read mode here
+        private void growFor(int frameSize) {
+            if (frameSize <= readBuffer.capacity() || readBuffer.remaining() < readBuffer.capacity()) return;
+            ByteBuffer bigger = ByteBuffer.allocate((int) Math.min(frameSize, 2L * readBuffer.capacity()));
+            bigger.put(readBuffer);
+            bigger.flip();
+            readBuffer = bigger;
+        }
+
+        private void handOffToLegacy() throws IOException {
+            byte[] alreadyRead = new byte[readBuffer.remaining()];
+            readBuffer.get(alreadyRead);
+            key.cancel();
+            loop.selector.selectNow();
+            channel.configureBlocking(true);
+
+            Socket socket = channel.socket();
+            MessageChannel legacy = new JavaMessageChannel(
+                    new SequenceInputStream(new ByteArrayInputStream(alreadyRead), socket.getInputStream()),
+                    socket.getOutputStream());
+            new Thread(() -> legacyHandler.handle(socket, legacy), "legacy-client-" + socket.getPort()).start();
+        }
+
+        @Override
+        public void send(CommandResponse response) throws IOException {
+            if (!channel.isOpen()) {
+                throw new IOException("Connection closed");
+            }
+            byte[] frame = BinaryCodec.encodeResponse(response, compress);
+            ByteBuffer buffer = ByteBuffer.allocate(4 + frame.length);
+            buffer.putInt(frame.length).put(frame).flip();
+            enqueue(buffer);
+        }
+
+        private void enqueue(ByteBuffer buffer) {
+            outbound.add(buffer);
+            boolean update = writeScheduled.compareAndSet(false, true);
+            if (outboundBytes.addAndGet(buffer.remaining()) > MAX_OUTBOUND_BYTES && readPaused.compareAndSet(false, true)) {
+                update = true;
+            }
+            if (update) loop.execute(this::updateInterest);
+        }
+
+        //Loop thread only
+        private void updateInterest() {
+            if (!key.isValid()) return;
+            int ops = readPaused.get() ? 0 : SelectionKey.OP_READ;
+            if (writeScheduled.get()) ops |= SelectionKey.OP_WRITE;
+            key.interestOps(ops);
+        }
+
+        void onWritable() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = outbound.peek()) != null) {
+                int before = buffer.remaining();
+                channel.write(buffer);
+                outboundBytes.addAndGet(buffer.remaining() - before);
+                if (buffer.hasRemaining()) break;
+                outbound.poll();
+            }
+            if (outbound.isEmpty()) {
+                writeScheduled.set(false);
+                //A response may have been queued between the last poll and clearing the flag
+                if (!outbound.isEmpty()) writeScheduled.compareAndSet(false, true);
+            }
+            if (readPaused.get() && outboundBytes.get() <= MAX_OUTBOUND_BYTES / 2) readPaused.set(false);
+            updateInterest();
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.out.println("Failed to close client channel: " + e.getMessage());
+            }
+        }
+    }
+}
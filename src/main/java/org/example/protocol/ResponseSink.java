@@ -0,0 +1,10 @@
+package org.example.protocol;
+
+import org.example.model.CommandResponse;
+
+import java.io.IOException;
+
+// Where a finished command's response goes, safe to call from any worker thread
+public interface ResponseSink {
+    void send(CommandResponse response) throws IOException;
+}
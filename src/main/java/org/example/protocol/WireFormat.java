@@ -0,0 +1,13 @@
+package org.example.protocol;
+
+// Encoding used on a client or node socket, JAVA is the original ObjectStream format
+public enum WireFormat {
+    JAVA,
+    BINARY;
+
+    //Pick the format from -Dwire.format=java|binary, binary when nothing is set
+    public static WireFormat fromSystemProperty() {
+        String value = System.getProperty("wire.format", "binary");
+        return WireFormat.valueOf(value.trim().toUpperCase());
+    }
+}
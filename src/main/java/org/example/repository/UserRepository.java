@@ -7,57 +7,213 @@ import org.example.model.User;
 
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-public class UserRepository {
-    private Map<String, User> usersByToken = new HashMap<>();
-    private final String FILE_PATH = "src/data/users.json";
+/*
+ Users live in a JSON snapshot (users.json) plus an append-only log of registrations since the
+ snapshot (users.log, one JSON user per line). Registering only appends a line; a background task
+ folds the log into a new snapshot once it grows past COMPACT_THRESHOLD entries.
+ Clients and the coordinator share these files, so loading, appending and compacting all hold an
+ exclusive FileLock on users.lock. Appends open the log for each registration, so no process keeps
+ writing to a log another one already folded away, and compaction builds the snapshot from what is
+ on disk rather than from its own possibly stale map.
+ Startup loads the snapshot and replays the log on top.
+ */
+public class UserRepository implements Closeable {
+    private static final int COMPACT_THRESHOLD = 1000;
+    private static final long COMPACT_CHECK_SECONDS = 30;
+    //A FileLock is held per JVM, so repositories of one process on the same files also queue here first
+    private static final Map<Path, Object> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    private final Map<String, User> usersByToken = new ConcurrentHashMap<>();
+    private final Map<String, User> usersByName = new ConcurrentHashMap<>();
+    private final Path snapshotPath;
+    private final Path logPath;
+    private final Path compactingLogPath;
+    private final Path lockPath;
+    private final Object processLock;
     private final Gson gson = new Gson();
+    private volatile int logEntries;
+    private ScheduledExecutorService compactionScheduler;
+
+    private interface StoreAction<T> {
+        T run() throws IOException;
+    }
 
     public UserRepository() {
+        this("src/data/users.json");
+    }
+
+    public UserRepository(String snapshotFile) {
+        String base = snapshotFile.replaceAll("\\.json$", "");
+        this.snapshotPath = Paths.get(snapshotFile);
+        this.logPath = Paths.get(base + ".log");
+        //Left by compactions before the store was locked, still replayed and folded in
+        this.compactingLogPath = Paths.get(logPath + ".compacting");
+        this.lockPath = Paths.get(base + ".lock");
+        this.processLock = PROCESS_LOCKS.computeIfAbsent(lockPath.toAbsolutePath().normalize(), p -> new Object());
         loadUsersFromFile();
+        startCompactionScheduler();
     }
 
     public void addUser(User user) {
-        usersByToken.put(user.getToken(), user);
-        saveAllUsersToFile();
+        index(user);
+        try {
+            withStoreLock(() -> {
+                try (Writer writer = Files.newBufferedWriter(logPath, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    writer.write(gson.toJson(user) + "\n");
+                }
+                logEntries++;
+                return null;
+            });
+        } catch (IOException e) {
+            System.out.println("Error appending to user log: " + e.getMessage());
+        }
     }
 
     public User getUserByToken(String token) {
-        return usersByToken.get(token);
+        return token == null ? null : usersByToken.get(token);
+    }
+
+    //Picks up users that other processes registered since this repository was loaded
+    public void reload() {
+        loadUsersFromFile();
+    }
+
+    public User getUserByUsername(String username) {
+        return usersByName.get(username.toLowerCase());
     }
 
     public Map<String, User> getAllUsers() {
-        return usersByToken;
+        return Collections.unmodifiableMap(usersByToken);
     }
 
-    private void saveAllUsersToFile() {
-        try (Writer writer = new FileWriter(FILE_PATH)) {
-            gson.toJson(usersByToken, writer);
+    private void index(User user) {
+        usersByToken.put(user.getToken(), user);
+        usersByName.put(user.getUsername().toLowerCase(), user);
+    }
+
+    //Exclusive against every repository on these files, in this process and in others
+    private <T> T withStoreLock(StoreAction<T> action) throws IOException {
+        synchronized (processLock) {
+            try (FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = channel.lock()) {
+                return action.run();
+            }
+        }
+    }
+
+    private void startCompactionScheduler() {
+        compactionScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-log-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactionScheduler.scheduleWithFixedDelay(() -> {
+            if (logEntries >= COMPACT_THRESHOLD) compact();
+        }, COMPACT_CHECK_SECONDS, COMPACT_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    //Stops background compaction, the log is only open while a registration is appended
+    @Override
+    public void close() throws IOException {
+        compactionScheduler.shutdownNow();
+    }
+
+    //Re-read snapshot and log under the lock and fold them into a new snapshot, the log is removed only after the snapshot replaced the old one
+    public void compact() {
+        try {
+            withStoreLock(() -> {
+                Map<String, User> current = new HashMap<>();
+                readSnapshot(current);
+                replayLog(compactingLogPath, current);
+                replayLog(logPath, current);
+
+                Path temp = Paths.get(snapshotPath + ".tmp");
+                try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    gson.toJson(current, writer);
+                }
+                Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(compactingLogPath);
+                Files.deleteIfExists(logPath);
+                current.values().forEach(this::index);
+                logEntries = 0;
+                return null;
+            });
         } catch (IOException e) {
-            System.out.println("Error writing to JSON file: " + e.getMessage());
+            System.out.println("Error compacting user log: " + e.getMessage());
         }
     }
 
     private void loadUsersFromFile() {
-        File file = new File(FILE_PATH);
-        if (!file.exists()){
-            System.out.println("file doesnot exist : " + FILE_PATH);
+        try {
+            withStoreLock(() -> {
+                Map<String, User> loaded = new HashMap<>();
+                readSnapshot(loaded);
+                replayLog(compactingLogPath, loaded);
+                int entries = replayLog(logPath, loaded);
+                loaded.values().forEach(this::index);
+                logEntries = entries;
+                return null;
+            });
+        } catch (IOException e) {
+            System.out.println("Error loading users: " + e.getMessage());
+        }
+    }
 
+    private void readSnapshot(Map<String, User> users) {
+        if (!Files.exists(snapshotPath)) {
+            System.out.println("file doesnot exist : " + snapshotPath);
             return;
         }
-
-        try (Reader reader = new FileReader(FILE_PATH)) {
+        try (Reader reader = Files.newBufferedReader(snapshotPath, StandardCharsets.UTF_8)) {
             Type type = new TypeToken<Map<String, User>>() {}.getType();
             Map<String, User> loaded = gson.fromJson(reader, type);
             if (loaded != null) {
-                usersByToken = loaded;
+                loaded.values().forEach(user -> users.put(user.getToken(), user));
             }
         } catch (IOException e) {
             System.out.println("Error reading from JSON file: " + e.getMessage());
         }
     }
 
+    //A torn last line from a crash mid-append is skipped, every complete line before it is kept
+    private int replayLog(Path path, Map<String, User> users) {
+        if (!Files.exists(path)) return 0;
 
+        int entries = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                try {
+                    User user = gson.fromJson(line, User.class);
+                    if (user != null && user.getToken() != null) {
+                        users.put(user.getToken(), user);
+                        entries++;
+                    }
+                } catch (RuntimeException e) {
+                    System.out.println("Skipping unreadable user log entry: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading user log: " + e.getMessage());
+        }
+        return entries;
+    }
 }
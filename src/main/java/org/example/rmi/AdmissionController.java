@@ -0,0 +1,54 @@
+package org.example.rmi;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Per-user and per-department rate limits plus a cap on concurrent calls to each node.
+ Limits come from -Drate.user / -Drate.userBurst, -Drate.department / -Drate.departmentBurst
+ (requests per second) and -Dnode.maxConcurrent.
+ */
+public class AdmissionController {
+    private static final double USER_RATE = Double.parseDouble(System.getProperty("rate.user", "50"));
+    private static final double USER_BURST = Double.parseDouble(System.getProperty("rate.userBurst", "100"));
+    private static final double DEPARTMENT_RATE = Double.parseDouble(System.getProperty("rate.department", "500"));
+    private static final double DEPARTMENT_BURST = Double.parseDouble(System.getProperty("rate.departmentBurst", "1000"));
+    private static final int NODE_MAX_CONCURRENT = Integer.getInteger("node.maxConcurrent", 8);
+    private static final long NODE_PERMIT_WAIT_MS = 2000;
+
+    private final Map<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> departmentBuckets = new ConcurrentHashMap<>();
+    private final Map<Integer, Semaphore> nodePermits = new ConcurrentHashMap<>();
+
+    //Returns null when the request may go ahead, otherwise the reason it was rejected
+    public String admit(String username, String department) {
+        TokenBucket user = userBuckets.computeIfAbsent(username.toLowerCase(), u -> new TokenBucket(USER_BURST, USER_RATE));
+        if (!user.tryAcquire()) {
+            return "Rate limit exceeded for user " + username;
+        }
+        TokenBucket dept = departmentBuckets.computeIfAbsent(department, d -> new TokenBucket(DEPARTMENT_BURST, DEPARTMENT_RATE));
+        if (!dept.tryAcquire()) {
+            return "Rate limit exceeded for department " + department;
+        }
+        return null;
+    }
+
+    public boolean acquireNode(int port) throws InterruptedException {
+        return permits(port).tryAcquire(NODE_PERMIT_WAIT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    //Without waiting, for optional calls like hedges that are better skipped than queued
+    public boolean tryAcquireNode(int port) {
+        return permits(port).tryAcquire();
+    }
+
+    public void releaseNode(int port) {
+        permits(port).release();
+    }
+
+    private Semaphore permits(int port) {
+        return nodePermits.computeIfAbsent(port, p -> new Semaphore(NODE_MAX_CONCURRENT));
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.rmi;
+
+import org.example.metrics.Counter;
+import org.example.metrics.Histogram;
+import org.example.metrics.MetricsRegistry;
+import org.example.trace.Trace;
+import org.example.trace.Tracer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+// Runs NodeService calls on a bounded pool so the coordinator can talk to several nodes at once
+public class AsyncNodeService {
+    private final ThreadPoolExecutor executor;
+    private final IntFunction<NodeService> resolver;
+    private final Map<Integer, Histogram> latencyByPort = new ConcurrentHashMap<>();
+    private final Map<Integer, Counter> errorsByPort = new ConcurrentHashMap<>();
+
+    //Call on a node, may throw like the RMI method it wraps
+    public interface NodeCall<T> {
+        T apply(NodeService node) throws Exception;
+    }
+
+    public AsyncNodeService(int threads, int queueCapacity, IntFunction<NodeService> resolver) {
+        this.resolver = resolver;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "node-call");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    //Run the call on the node behind the port, fails if the node can't be reached or the pool is full
+    public <T> CompletableFuture<T> call(int port, NodeCall<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Trace trace = Tracer.current();
+        try {
+            Future<?> task = executor.submit(() -> {
+                long start = System.nanoTime();
+                Trace previous = Tracer.attach(trace);
+                try {
+                    NodeService node = resolver.apply(port);
+                    if (node == null) {
+                        throw new RemoteNodeUnavailableException(port);
+                    }
+                    result.complete(call.apply(node));
+                } catch (Throwable e) {
+                    if (!result.isCancelled()) errors(port).increment();
+                    result.completeExceptionally(e);
+                } finally {
+                    latency(port).recordSince(start);
+                    if (trace != null) trace.span("node:" + port, start);
+                    Tracer.attach(previous);
+                }
+            });
+            //Cancelling the future interrupts the worker so a slow node doesn't hold a pool thread for nothing
+            result.whenComplete((value, error) -> {
+                if (result.isCancelled()) task.cancel(true);
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    //Ask every node in parallel and complete with the first port that has the file, or null if none do
+    public CompletableFuture<Integer> firstWithFile(List<Integer> ports, String fileName) {
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        if (ports.isEmpty()) {
+            first.complete(null);
+            return first;
+        }
+
+        String traceId = Tracer.currentId();
+        AtomicInteger remaining = new AtomicInteger(ports.size());
+        List<CompletableFuture<Boolean>> probes = new ArrayList<>();
+        for (int port : ports) {
+            CompletableFuture<Boolean> probe = call(port, node -> node.hasFile(fileName, traceId));
+            probes.add(probe);
+            probe.whenComplete((hasFile, error) -> {
+                if (error instanceof CancellationException) {
+                    return;
+                }
+                if (error != null) {
+                    System.out.println("Node check failed on port " + port + ": " + error.getMessage());
+                } else if (hasFile) {
+                    first.complete(port);
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    first.complete(null);
+                }
+            });
+        }
+
+        first.whenComplete((port, error) -> probes.forEach(probe -> probe.cancel(true)));
+        return first;
+    }
+
+    //Per node call latency, shared with calls the coordinator makes outside this pool
+    public Histogram latency(int port) {
+        return latencyByPort.computeIfAbsent(port, p -> MetricsRegistry.global().histogram(
+                "coordinator_node_call_seconds", "Latency of calls from the coordinator to a node", "port", p.toString()));
+    }
+
+    public Counter errors(int port) {
+        return errorsByPort.computeIfAbsent(port, p -> MetricsRegistry.global().counter(
+                "coordinator_node_errors_total", "Failed calls from the coordinator to a node", "port", p.toString()));
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public static class RemoteNodeUnavailableException extends Exception {
+        public RemoteNodeUnavailableException(int port) {
+            super("Node on port " + port + " is unavailable");
+        }
+    }
+}
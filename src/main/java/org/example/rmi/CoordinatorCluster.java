@@ -0,0 +1,274 @@
+package org.example.rmi;
+
+import org.example.model.FileCommand;
+
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/*
+ Routing state shared by the coordinators of a cluster. Every -Dgossip.intervalMs (default 1000)
+ a coordinator swaps the small state of every coordinator it knows with one random peer over RMI,
+ on the peer's client port + 1000. What is shared:
+   load      commands each coordinator sent to each node, summed so all of them balance on the same numbers
+   nodes     when each coordinator last found a node up or down, a node someone saw down within
+             -Dgossip.nodeDownSeconds (default 5) is skipped without another registry lookup
+   retries   a digest of each coordinator's retry queue; a peer whose digest changed is asked for its
+             queue directly, with access tokens left out (retries don't check them again). A coordinator
+             whose heartbeat stops advancing for -Dgossip.failSeconds (default 10) is considered gone,
+             and the live coordinator with the lowest port takes over the last copy of its queue
+ The state of a coordinator silent for -Dgossip.stateTtlSeconds (default 60) is dropped, so its load
+ and node sightings stop counting; it is only taken back once it restarts or its heartbeat moves on.
+ Wall clock times are compared between coordinators, they are expected to run on hosts with synced clocks.
+ A coordinator cut off rather than stopped keeps its own queue too, so an adopted command may run twice,
+ and commands queued in a gone coordinator's last round may be missed.
+ Without peers nothing is exported and the state is only this coordinator's own.
+ */
+public class CoordinatorCluster implements CoordinatorPeer {
+    public static final int GOSSIP_PORT_OFFSET = 1000;
+    private static final long INTERVAL_MILLIS = Long.getLong("gossip.intervalMs", 1000);
+    private static final long FAIL_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("gossip.failSeconds", 10));
+    private static final long NODE_DOWN_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("gossip.nodeDownSeconds", 5));
+    private static final long STATE_TTL_MILLIS = Math.max(FAIL_MILLIS,
+            TimeUnit.SECONDS.toMillis(Long.getLong("gossip.stateTtlSeconds", 60)));
+
+    private final int port;
+    private final List<Integer> peers;
+    private final long incarnation = System.currentTimeMillis();
+    private final AtomicLong heartbeat = new AtomicLong();
+    private final Map<Integer, LongAdder> dispatched = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> nodeSeenUp = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> nodeSeenDown = new ConcurrentHashMap<>();
+    private final Supplier<List<FileCommand>> retries;
+    private final Consumer<List<FileCommand>> adoptRetries;
+    private final Map<Integer, CoordinatorState> states = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> lastProgress = new ConcurrentHashMap<>();
+    private final Map<Integer, List<FileCommand>> peerRetries = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> peerRetryDigests = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> adopted = new ConcurrentHashMap<>();
+    private final Map<Integer, CoordinatorState> evicted = new ConcurrentHashMap<>();
+    private final Set<Integer> alive = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService gossip;
+
+    //retries reads this coordinator's retry queue, adoptRetries appends commands taken over from a gone peer
+    public CoordinatorCluster(int port, List<Integer> peers, Supplier<List<FileCommand>> retries,
+                              Consumer<List<FileCommand>> adoptRetries) {
+        this.port = port;
+        this.peers = new ArrayList<>(peers);
+        this.peers.remove(Integer.valueOf(port));
+        this.retries = retries;
+        this.adoptRetries = adoptRetries;
+    }
+
+    public void start() throws RemoteException {
+        if (peers.isEmpty()) return;
+
+        CoordinatorPeer stub = (CoordinatorPeer) UnicastRemoteObject.exportObject(this, 0);
+        Registry registry = LocateRegistry.createRegistry(port + GOSSIP_PORT_OFFSET);
+        registry.rebind("CoordinatorPeer", stub);
+
+        gossip = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "coordinator-gossip-" + port);
+            thread.setDaemon(true);
+            return thread;
+        });
+        gossip.scheduleWithFixedDelay(this::gossipRound, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        System.out.println("Coordinator " + port + " gossiping with " + peers + " on port " + (port + GOSSIP_PORT_OFFSET));
+    }
+
+    public void stop() {
+        if (gossip == null) return;
+        gossip.shutdownNow();
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (RemoteException e) {
+            //not exported
+        }
+    }
+
+    @Override
+    public Map<Integer, CoordinatorState> exchange(Map<Integer, CoordinatorState> incoming) throws RemoteException {
+        merge(incoming);
+        return view();
+    }
+
+    @Override
+    public List<FileCommand> queuedRetries() {
+        List<FileCommand> commands = new ArrayList<>();
+        for (FileCommand command : retries.get()) {
+            commands.add(withoutToken(command));
+        }
+        return commands;
+    }
+
+    public void recordDispatch(int nodePort) {
+        dispatched.computeIfAbsent(nodePort, p -> new LongAdder()).increment();
+    }
+
+    //Commands sent to the node by every coordinator known to be in the cluster
+    public long load(int nodePort) {
+        LongAdder own = dispatched.get(nodePort);
+        long total = own == null ? 0 : own.sum();
+        for (CoordinatorState state : states.values()) {
+            total += state.getDispatched().getOrDefault(nodePort, 0L);
+        }
+        return total;
+    }
+
+    public void recordNode(int nodePort, boolean up) {
+        (up ? nodeSeenUp : nodeSeenDown).put(nodePort, System.currentTimeMillis());
+    }
+
+    //True when the latest lookup by any coordinator failed and it is recent enough to trust
+    public boolean knownDown(int nodePort) {
+        long up = nodeSeenUp.getOrDefault(nodePort, 0L);
+        long down = nodeSeenDown.getOrDefault(nodePort, 0L);
+        for (CoordinatorState state : states.values()) {
+            up = Math.max(up, state.getNodeSeenUp().getOrDefault(nodePort, 0L));
+            down = Math.max(down, state.getNodeSeenDown().getOrDefault(nodePort, 0L));
+        }
+        return down > up && System.currentTimeMillis() - down < NODE_DOWN_MILLIS;
+    }
+
+    public int alivePeers() {
+        return alive.size();
+    }
+
+    private void gossipRound() {
+        heartbeat.incrementAndGet();
+        int peer = peers.get(ThreadLocalRandom.current().nextInt(peers.size()));
+        try {
+            merge(stub(peer).exchange(view()));
+        } catch (Exception e) {
+            //An unreachable peer stops advancing and is declared gone after the fail timeout
+        }
+        fetchChangedRetries();
+        checkPeers();
+    }
+
+    private CoordinatorPeer stub(int peer) throws Exception {
+        Registry registry = LocateRegistry.getRegistry("localhost", peer + GOSSIP_PORT_OFFSET);
+        return (CoordinatorPeer) registry.lookup("CoordinatorPeer");
+    }
+
+    //Copy the queue of each live peer whose digest moved, so it can still be adopted once the peer is gone
+    private void fetchChangedRetries() {
+        long now = System.currentTimeMillis();
+        for (CoordinatorState state : states.values()) {
+            int peer = state.getPort();
+            Long held = peerRetryDigests.get(peer);
+            if (held != null && held == state.getRetryDigest()) continue;
+            if (now - lastProgress.getOrDefault(peer, 0L) >= FAIL_MILLIS) continue;
+
+            try {
+                peerRetries.put(peer, state.getRetryCount() == 0 ? Collections.emptyList() : stub(peer).queuedRetries());
+                peerRetryDigests.put(peer, state.getRetryDigest());
+            } catch (Exception e) {
+                //The previous copy stays, the next round asks again
+            }
+        }
+    }
+
+    private Map<Integer, CoordinatorState> view() {
+        Map<Integer, CoordinatorState> view = new HashMap<>(states);
+        view.put(port, ownState());
+        return view;
+    }
+
+    private CoordinatorState ownState() {
+        Map<Integer, Long> counts = new HashMap<>();
+        dispatched.forEach((nodePort, count) -> counts.put(nodePort, count.sum()));
+        List<FileCommand> queued = retries.get();
+        return new CoordinatorState(port, incarnation, heartbeat.get(), counts, new HashMap<>(nodeSeenUp),
+                new HashMap<>(nodeSeenDown), digest(queued), queued.size());
+    }
+
+    //Cheap fingerprint of the queue, peers fetch the commands only when it changes
+    private static long digest(List<FileCommand> commands) {
+        long digest = commands.size();
+        for (FileCommand command : commands) {
+            digest = 31 * digest + Objects.hash(command.getType().name(), command.getFileName(), command.getDepartment(),
+                    command.getRequestedBy(), command.getRequestId(), command.getVersion());
+            digest = 31 * digest + Objects.hashCode(command.getContent());
+        }
+        return digest;
+    }
+
+    private static FileCommand withoutToken(FileCommand command) {
+        FileCommand copy = new FileCommand(command.getType(), command.getFileName(), command.getDepartment(),
+                command.getContent(), command.getRequestedBy());
+        copy.setRequestId(command.getRequestId());
+        copy.setCursor(command.getCursor());
+        copy.setLimit(command.getLimit());
+        copy.setVersion(command.getVersion());
+        copy.setTraceId(command.getTraceId());
+        return copy;
+    }
+
+    private void merge(Map<Integer, CoordinatorState> incoming) {
+        long now = System.currentTimeMillis();
+        for (CoordinatorState state : incoming.values()) {
+            if (state.getPort() == port || !state.newerThan(evicted.get(state.getPort()))) continue;
+            boolean[] advanced = new boolean[1];
+            states.compute(state.getPort(), (p, known) -> {
+                advanced[0] = state.newerThan(known);
+                return advanced[0] ? state : known;
+            });
+            if (advanced[0]) {
+                lastProgress.put(state.getPort(), now);
+                evicted.remove(state.getPort());
+            }
+        }
+    }
+
+    private void checkPeers() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Integer, CoordinatorState> entry : states.entrySet()) {
+            int peer = entry.getKey();
+            long silent = now - lastProgress.getOrDefault(peer, 0L);
+            boolean up = silent < FAIL_MILLIS;
+            if (up && alive.add(peer)) {
+                System.out.println("Coordinator on port " + peer + " joined");
+            } else if (!up && alive.remove(peer)) {
+                System.out.println("Coordinator on port " + peer + " is gone");
+            }
+            if (!up) takeOverRetries(peer);
+            if (silent >= STATE_TTL_MILLIS) evict(peer, entry.getValue());
+        }
+    }
+
+    //Only the lowest live port adopts, so a gone coordinator's queue is taken over once
+    private void takeOverRetries(int peer) {
+        List<FileCommand> commands = peerRetries.get(peer);
+        Long digest = peerRetryDigests.get(peer);
+        if (commands == null || commands.isEmpty() || digest.equals(adopted.get(peer))) return;
+        for (int other : alive) {
+            if (other < port) return;
+        }
+        adopted.put(peer, digest);
+        adoptRetries.accept(commands);
+        System.out.println("Took over " + commands.size() + " queued commands of coordinator " + peer);
+    }
+
+    //The last state seen stays as a marker, so copies other peers still gossip don't bring it back
+    private void evict(int peer, CoordinatorState state) {
+        evicted.put(peer, state);
+        states.remove(peer);
+        lastProgress.remove(peer);
+        peerRetries.remove(peer);
+        peerRetryDigests.remove(peer);
+        adopted.remove(peer);
+        System.out.println("Dropped the state of coordinator " + peer + ", silent for " + STATE_TTL_MILLIS / 1000 + "s");
+    }
+}
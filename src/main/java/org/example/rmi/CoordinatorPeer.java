@@ -0,0 +1,17 @@
+package org.example.rmi;
+
+import org.example.model.FileCommand;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+
+public interface CoordinatorPeer extends Remote {
+    /* Push-pull gossip round: the caller sends every coordinator state it knows, keyed by coordinator port,
+       and gets back the receiver's view after merging */
+    Map<Integer, CoordinatorState> exchange(Map<Integer, CoordinatorState> states) throws RemoteException;
+
+    //The receiver's own retry queue without access tokens, fetched when its gossiped digest changes
+    List<FileCommand> queuedRetries() throws RemoteException;
+}
@@ -1,100 +1,505 @@
 package org.example.rmi;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import org.example.metrics.Counter;
+import org.example.metrics.Histogram;
+import org.example.metrics.MetricsRegistry;
+import org.example.model.CommandResponse;
 import org.example.model.CommandType;
 import org.example.model.FileCommand;
+import org.example.model.FileListPage;
+import org.example.model.User;
+import org.example.protocol.MessageChannel;
+import org.example.protocol.NioServer;
+import org.example.protocol.ResponseSink;
+import org.example.repository.UserRepository;
+import org.example.service.JwtService;
+import org.example.trace.Trace;
+import org.example.trace.Tracer;
+import org.example.transport.NodeTransport;
 import java.io.*;
-import java.lang.reflect.Type;
-import java.net.ServerSocket;
 import java.net.Socket;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class CoordinatorRmi {
-    private static final Map<String, List<Integer>> departmentNodes = new HashMap<>();
-    private static final Map<Integer, Integer> nodeLoad = new HashMap<>();
-    private static final Queue<FileCommand> retryQueue = new ConcurrentLinkedQueue<>();
-    private static final String USERS_FILE = "src/data/users.json";
+    private static final Map<String, List<Integer>> DEFAULT_DEPARTMENT_NODES = new HashMap<>();
+    private final Queue<FileCommand> retryQueue = new ConcurrentLinkedQueue<>();
+    private final JwtService jwtService = new JwtService();
+    private static final String LOGIN_QUEUE = "login";
+    private static final long USER_RELOAD_INTERVAL_MILLIS = 1000;
+    private final AtomicLong lastUserReload = new AtomicLong();
+    private UserRepository users;
+    private static final int WORKER_THREADS = 16;
+    private static final int EVENT_LOOPS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final int MAX_QUEUED_PER_DEPARTMENT = 1000;
+    private final FairScheduler scheduler = new FairScheduler(WORKER_THREADS, MAX_QUEUED_PER_DEPARTMENT,
+            FairScheduler.parseWeights(System.getProperty("fair.weights")));
+    private final AdmissionController admission = new AdmissionController();
+    private static final int VIEW_TIMEOUT_SECONDS = 10;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private final AsyncNodeService asyncNodes = new AsyncNodeService(32, 1024, this::getNodeService);
+    private final HedgedReader hedgedReader = new HedgedReader(asyncNodes, admission);
+    private final ErasureCodedFiles erasureCoded = new ErasureCodedFiles(asyncNodes, System.getProperty("erasure.scheme"));
+    private final FileNameIndex nameIndex = new FileNameIndex();
+    private static final int INDEX_REFRESH_SECONDS = 30;
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+    private final MetricsRegistry metrics = MetricsRegistry.global();
+    private final Map<CommandType, Histogram> commandLatency = new EnumMap<>(CommandType.class);
+    private final Counter rejectedAuth = rejections("auth");
+    private final Counter rejectedRate = rejections("rate");
+    private final Counter rejectedBusy = rejections("busy");
+    private final Counter retrySuccesses = metrics.counter("coordinator_retries_total",
+            "Queued commands retried, by outcome", "outcome", "success");
+    private final Counter retryFailures = metrics.counter("coordinator_retries_total",
+            "Queued commands retried, by outcome", "outcome", "failure");
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final int listenPort;
+    private final CoordinatorCluster cluster;
+    private final Map<String, List<Integer>> departmentNodes;
+    private final NodeTransport transport;
+    private final List<Thread> backgroundThreads = new ArrayList<>();
+    private NioServer server;
 
     static {
-        departmentNodes.put("development", Arrays.asList(5001));
-        departmentNodes.put("qa", Arrays.asList(5002));
-        departmentNodes.put("design", Arrays.asList(5003));
+        DEFAULT_DEPARTMENT_NODES.put("development", Arrays.asList(5001));
+        DEFAULT_DEPARTMENT_NODES.put("qa", Arrays.asList(5002));
+        DEFAULT_DEPARTMENT_NODES.put("design", Arrays.asList(5003));
     }
 
+    public CoordinatorRmi(int listenPort, List<Integer> peers, NodeTransport transport) {
+        this(listenPort, peers, DEFAULT_DEPARTMENT_NODES, transport);
+    }
+
+    //listenPort 0 binds an ephemeral port, see getPort. Nodes are reached over the transport they serve on
+    public CoordinatorRmi(int listenPort, List<Integer> peers, Map<String, List<Integer>> departmentNodes,
+                          NodeTransport transport) {
+        this.listenPort = listenPort;
+        this.departmentNodes = departmentNodes;
+        this.transport = transport;
+        this.cluster = new CoordinatorCluster(listenPort, peers, () -> new ArrayList<>(retryQueue), retryQueue::addAll);
+        for (CommandType type : CommandType.values()) {
+            commandLatency.put(type, metrics.histogram("coordinator_command_seconds",
+                    "Time from receiving a command to sending its response", "command", type.name()));
+        }
+        metrics.gauge("coordinator_in_flight_requests", "Commands admitted and not yet answered", inFlight::get);
+        metrics.gauge("coordinator_retry_queue_size", "Commands waiting in the retry queue", retryQueue::size);
+        metrics.gauge("coordinator_scheduled_tasks", "Commands queued in the fair scheduler", scheduler::queuedTasks);
+        metrics.gauge("coordinator_indexed_names", "File names in the search index", nameIndex::size);
+        metrics.gauge("coordinator_live_peers", "Other coordinators currently gossiping with this one", cluster::alivePeers);
+    }
+
+    private Counter rejections(String reason) {
+        return MetricsRegistry.global().counter("coordinator_rejected_total",
+                "Commands refused before reaching a node, by reason", "reason", reason);
+    }
+
+    //Usage: java CoordinatorRmi [port] [peer coordinator ports...], port defaults to 6000, nodes over -Dtransport
     public static void main(String[] args) {
-        new Thread(CoordinatorRmi::processRetryQueue).start();
+        run(args, NodeTransport.fromSystemProperty());
+    }
 
-        try (ServerSocket serverSocket = new ServerSocket(6000)) {
-            System.out.println("Coordinator listening on port 6000");
-            while (true) {
-                Socket clientSocket = serverSocket.accept();
-                handleClient(clientSocket);
-            }
+    //Shared with the socket Coordinator launcher
+    public static void run(String[] args, NodeTransport transport) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 6000;
+        List<Integer> peers = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            peers.add(Integer.parseInt(args[i]));
+        }
+        new CoordinatorRmi(port, peers, transport).start();
+    }
+
+    public void start() {
+        backgroundThreads.add(new Thread(this::processRetryQueue, "retry-queue"));
+        backgroundThreads.add(new Thread(this::refreshNameIndexLoop, "name-index-refresh"));
+        backgroundThreads.forEach(Thread::start);
+        metrics.expose("coordinator-" + listenPort,
+                Integer.getInteger("metrics.port", listenPort == 0 ? 0 : listenPort + 3400));
+
+        try {
+            cluster.start();
+            server = new NioServer(listenPort, EVENT_LOOPS, this::dispatch, this::handleLegacyClient);
+            server.start();
+            System.out.println("Coordinator listening on port " + server.getPort() + ", nodes over " + transport.name());
         } catch (IOException e) {
             System.out.println("Coordinator error: " + e.getMessage());
         }
     }
 
-    private static void handleClient(Socket clientSocket) {
-        try (ObjectInputStream in = new ObjectInputStream(clientSocket.getInputStream());
-             ObjectOutputStream out = new ObjectOutputStream(clientSocket.getOutputStream())) {
+    public int getPort() {
+        return server.getPort();
+    }
+
+    //Stop accepting clients and the background threads, for coordinators embedded in another program
+    public void stop() {
+        backgroundThreads.forEach(Thread::interrupt);
+        cluster.stop();
+        try {
+            synchronized (this) {
+                if (users != null) users.close();
+            }
+            if (server != null) server.stop();
+        } catch (IOException e) {
+            System.out.println("Failed to stop coordinator: " + e.getMessage());
+        }
+    }
 
-            FileCommand command = (FileCommand) in.readObject();
-            System.out.println("Received command: " + command);
+    //Session of a Java serialization client, handed over by the NIO front end with its own thread
+    private void handleLegacyClient(Socket clientSocket, MessageChannel channel) {
+        try (Socket socket = clientSocket; MessageChannel session = channel) {
+            ResponseSink sink = response -> {
+                synchronized (session) {
+                    session.writeResponse(response);
+                }
+            };
+            while (true) {
+                dispatch(session.readCommand(), sink);
+            }
+        } catch (EOFException e) {
+            System.out.println("Client disconnected: " + clientSocket.getRemoteSocketAddress());
+        } catch (Exception e) {
+            System.out.println("Error handling client: " + e.getMessage());
+        }
+    }
 
-            Map<String, Object> user = validateUser(command.getRequestedBy());
+    //Authenticate, apply rate limits, then queue the command fairly behind its user's department
+    private void dispatch(FileCommand command, ResponseSink sink) {
+        if (command.getTraceId() == null) {
+            command.setTraceId(Tracer.newTraceId());
+        }
+        Trace trace = Tracer.start(command.getTraceId(), "coordinator-" + listenPort, String.valueOf(command.getType()));
+        long start = System.nanoTime();
+        long requestId = command.getRequestId();
+        try {
+            if (command.getType() == CommandType.LOGIN) {
+                dispatchLogin(command, sink, trace);
+                return;
+            }
+            User user = jwtService.verify(command.getAuthToken());
+            trace.span("auth", start);
             if (user == null) {
-                out.writeObject("User not found");
+                rejectedAuth.increment();
+                respond(sink, requestId, "Missing, invalid or expired access token");
+                Tracer.finish(trace);
                 return;
             }
 
-            Object result = processCommand(command, user);
-            out.writeObject(result);
+            String department = user.getDepartment().toLowerCase();
+            trace.attribute("user", user.getUsername());
+            trace.attribute("fileName", command.getFileName());
+            long admitStart = System.nanoTime();
+            String rejection = admission.admit(user.getUsername(), department);
+            trace.span("admission", admitStart);
+            if (rejection != null) {
+                rejectedRate.increment();
+                respond(sink, requestId, rejection);
+                Tracer.finish(trace);
+                return;
+            }
 
-        } catch (Exception e) {
-            System.out.println("Error handling client: " + e.getMessage());
+            Histogram latency = command.getType() == null ? null : commandLatency.get(command.getType());
+            inFlight.incrementAndGet();
+            long queuedAt = System.nanoTime();
+            boolean queued = scheduler.submit(department, () -> {
+                Tracer.attach(trace);
+                trace.span("queue-wait", queuedAt);
+                try {
+                    respond(sink, requestId, processCommand(command, user));
+                } finally {
+                    inFlight.decrementAndGet();
+                    if (latency != null) latency.recordSince(start);
+                    Tracer.finish(trace);
+                }
+            });
+            if (!queued) {
+                inFlight.decrementAndGet();
+                rejectedBusy.increment();
+                respond(sink, requestId, "Coordinator busy: too many queued requests for department " + department);
+                Tracer.finish(trace);
+            }
+        } finally {
+            //The event loop thread goes on to other connections, the worker carries the trace from here
+            Tracer.attach(null);
+        }
+    }
+
+    //LOGIN is the one command without an access token, it runs on a worker because a miss rereads the user store
+    private void dispatchLogin(FileCommand command, ResponseSink sink, Trace trace) {
+        long queuedAt = System.nanoTime();
+        boolean queued = scheduler.submit(LOGIN_QUEUE, () -> {
+            Tracer.attach(trace);
+            trace.span("queue-wait", queuedAt);
+            try {
+                respond(sink, command.getRequestId(), handleLoginCommand(command));
+            } finally {
+                commandLatency.get(CommandType.LOGIN).recordSince(queuedAt);
+                Tracer.finish(trace);
+            }
+        });
+        if (!queued) {
+            rejectedBusy.increment();
+            //A failure, not a result, so the client never takes the reason for a token
+            respondFailure(sink, command.getRequestId(), "Coordinator busy: too many queued logins");
+            Tracer.finish(trace);
+        }
+    }
+
+    //Exchanges the login token from the user store for a signed access token, null when the login token is unknown
+    private String handleLoginCommand(FileCommand command) {
+        User user = users().getUserByToken(command.getAuthToken());
+        long now = System.currentTimeMillis();
+        long last = lastUserReload.get();
+        if (user == null && now - last >= USER_RELOAD_INTERVAL_MILLIS && lastUserReload.compareAndSet(last, now)) {
+            //Users are registered by ClientSimulator in its own process
+            users().reload();
+            user = users().getUserByToken(command.getAuthToken());
+        }
+        if (user == null) {
+            rejectedAuth.increment();
+            return null;
+        }
+        return jwtService.issue(user);
+    }
+
+    private synchronized UserRepository users() {
+        if (users == null) users = new UserRepository();
+        return users;
+    }
+
+    private void respond(ResponseSink sink, long requestId, Object result) {
+        send(sink, new CommandResponse(requestId, result));
+    }
+
+    private void respondFailure(ResponseSink sink, long requestId, String reason) {
+        send(sink, CommandResponse.failure(requestId, reason));
+    }
+
+    private void send(ResponseSink sink, CommandResponse response) {
+        try {
+            sink.send(response);
+        } catch (IOException e) {
+            System.out.println("Failed to send response " + response.getRequestId() + ": " + e.getMessage());
         }
     }
 
-    private static Object processCommand(FileCommand command, Map<String, Object> user) {
+    private Object processCommand(FileCommand command, User user) {
         try {
             if (command.getType() == CommandType.VIEW) {
                 return handleViewCommand(command);
             }
+            if (command.getType() == CommandType.VIEW_ALL) {
+                return handleViewAllCommand(command);
+            }
+            if (command.getType() == CommandType.SEARCH) {
+                return handleSearchCommand(command);
+            }
 
             if (!validateDepartmentAccess(command, user)) {
                 return "Access denied: Invalid department permissions";
             }
+            if ((command.getType() == CommandType.ADD || command.getType() == CommandType.UPDATE)
+                    && erasureCoded.applies(command.getContent())) {
+                return handleErasureCodedWrite(command);
+            }
 
-            NodeService node = selectNode(command.getDepartment().toLowerCase());
-            return executeNodeCommand(command, node);
+            long routeStart = System.nanoTime();
+            int port = selectNodePort(command.getDepartment().toLowerCase());
+            Tracer.span("route", routeStart);
+            Object result = withNodePermit(port, () -> {
+                long start = System.nanoTime();
+                try {
+                    return executeNodeCommand(command, getNodeService(port));
+                } finally {
+                    asyncNodes.latency(port).recordSince(start);
+                    Tracer.span("node:" + port, start);
+                }
+            });
+            recordInNameIndex(command, port, result);
+            if (command.getType() == CommandType.DELETE && erasureCoded.enabled()
+                    && erasureCoded.delete(command.getFileName(), getAllNodePorts())) {
+                //A whole copy the node failed to delete would come back through sync, so its error still wins
+                return "File not found.".equals(result) ? "File deleted." : result;
+            }
+            return result;
         } catch (Exception e) {
             return "Error processing command: " + e.getMessage();
         }
     }
 
-    private static Object handleViewCommand(FileCommand command) {
+    //Fragments go to the live nodes, the department's own first so small departments still hold most of them
+    private Object handleErasureCodedWrite(FileCommand command) {
+        List<Integer> ports = new ArrayList<>(departmentNodes.getOrDefault(command.getDepartment().toLowerCase(),
+                Collections.emptyList()));
         for (int port : getAllNodePorts()) {
+            if (!ports.contains(port)) ports.add(port);
+        }
+        ports.removeIf(port -> !isNodeAlive(port));
+
+        Object result = erasureCoded.write(command.getFileName(), command.getContent(), ports);
+        ports.forEach(this::incrementNodeLoad);
+        if (!ports.isEmpty()) recordInNameIndex(command, ports.get(0), result);
+        return result;
+    }
+
+    //Answered from the coordinator's name index, "text*" is a prefix search, anything else a substring search
+    private Object handleSearchCommand(FileCommand command) {
+        String query = command.getFileName() == null ? "" : command.getFileName().trim();
+        int limit = command.getLimit() <= 0 ? DEFAULT_SEARCH_LIMIT : Math.min(command.getLimit(), MAX_PAGE_SIZE);
+        if (query.isEmpty()) {
+            return "Search text is required";
+        }
+
+        List<String> names = query.endsWith("*")
+                ? nameIndex.prefix(query.substring(0, query.length() - 1), limit)
+                : nameIndex.substring(query, limit);
+        return new FileListPage(names, null);
+    }
+
+    //Probe every node in parallel, read from the first one that has the file and hedge to its replicas
+    private Object handleViewCommand(FileCommand command) {
+        long probeStart = System.nanoTime();
+        Integer port = findNodeWithFile(command.getFileName());
+        Tracer.span("probe", probeStart);
+        if (port != null && command.getVersion() > 0) {
+            return readVersion(port, command);
+        }
+        if (port != null) {
             try {
-                NodeService node = getNodeService(port);
-                if (node != null && node.hasFile(command.getFileName())) {
-                    incrementNodeLoad(port);
-                    return node.sendFile(command.getFileName());
-                }
+                incrementNodeLoad(port);
+                return withNodePermit(port, () -> hedgedReader.read(port, getReplicaPorts(port), command.getFileName())
+                        .get(VIEW_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             } catch (Exception e) {
-                System.out.println("Node check failed on port " + port + ": " + e.getMessage());
+                System.out.println("Read failed on port " + port + ": " + e.getMessage());
             }
         }
+        if (port == null && erasureCoded.enabled()) {
+            String content = readErasureCoded(command.getFileName());
+            if (content != null) return content;
+        }
         retryQueue.add(command);
         return "VIEW request queued. File not found or all nodes unavailable.";
     }
 
-    private static NodeService selectNode(String department) throws Exception {
+    //No node has a whole copy, rebuild the file from any k of its fragments
+    private String readErasureCoded(String fileName) {
+        long start = System.nanoTime();
+        try {
+            return erasureCoded.read(fileName, getAllNodePorts()).get(VIEW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            System.out.println("Erasure coded read of " + fileName + " failed: " + e.getMessage());
+        } finally {
+            Tracer.span("erasure-read", start);
+        }
+        return null;
+    }
+
+    //Version numbers are local to a node, so an explicit version is read from that node only, without hedging
+    private Object readVersion(int port, FileCommand command) {
+        String traceId = Tracer.currentId();
+        try {
+            incrementNodeLoad(port);
+            return withNodePermit(port, () -> asyncNodes.call(port,
+                    node -> node.sendFileVersion(command.getFileName(), command.getVersion(), traceId))
+                    .get(VIEW_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Version read interrupted";
+        } catch (Exception e) {
+            return "Version read failed on port " + port + ": " + e.getMessage();
+        }
+    }
+
+    //Ask every node for its next sorted page in parallel and merge them into one cluster page
+    private Object handleViewAllCommand(FileCommand command) {
+        int limit = command.getLimit() <= 0 ? DEFAULT_PAGE_SIZE : Math.min(command.getLimit(), MAX_PAGE_SIZE);
+        String prefix = command.getFileName() == null ? "" : command.getFileName();
+        String cursor = command.getCursor();
+
+        List<CompletableFuture<String[]>> pages = new ArrayList<>();
+        for (int port : getAllNodePorts()) {
+            pages.add(asyncNodes.call(port, node -> node.listFiles(prefix, cursor, limit)));
+        }
+
+        List<String[]> nodePages = new ArrayList<>();
+        boolean nodeHasMore = false;
+        for (CompletableFuture<String[]> page : pages) {
+            try {
+                String[] names = page.get(VIEW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                nodePages.add(names);
+                nodeHasMore |= names.length == limit;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "Listing interrupted";
+            } catch (ExecutionException | TimeoutException e) {
+                System.out.println("Listing failed on a node: " + e.getMessage());
+            }
+        }
+
+        List<String> merged = mergeSorted(nodePages, limit + 1);
+        boolean hasMore = merged.size() > limit || nodeHasMore;
+        if (merged.size() > limit) {
+            merged = merged.subList(0, limit);
+        }
+        String nextCursor = hasMore && !merged.isEmpty() ? merged.get(merged.size() - 1) : null;
+        return new FileListPage(new ArrayList<>(merged), nextCursor);
+    }
+
+    //k-way merge of sorted node pages, dropping names several nodes hold
+    private static List<String> mergeSorted(List<String[]> pages, int max) {
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Comparator.comparing((int[] head) -> pages.get(head[0])[head[1]]));
+        for (int i = 0; i < pages.size(); i++) {
+            if (pages.get(i).length > 0) heads.add(new int[]{i, 0});
+        }
+
+        List<String> merged = new ArrayList<>();
+        while (!heads.isEmpty() && merged.size() < max) {
+            int[] head = heads.poll();
+            String name = pages.get(head[0])[head[1]];
+            if (merged.isEmpty() || !merged.get(merged.size() - 1).equals(name)) {
+                merged.add(name);
+            }
+            if (++head[1] < pages.get(head[0]).length) heads.add(head);
+        }
+        return merged;
+    }
+
+    private Integer findNodeWithFile(String fileName) {
+        try {
+            return asyncNodes.firstWithFile(getAllNodePorts(), fileName).get(VIEW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            System.out.println("File lookup failed for " + fileName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    //Caps the calls in flight to one node so a slow node can't absorb every worker
+    private Object withNodePermit(int port, Callable<Object> call) throws Exception {
+        if (!admission.acquireNode(port)) {
+            return "Node on port " + port + " is busy, try again later";
+        }
+        try {
+            return call.call();
+        } finally {
+            admission.releaseNode(port);
+        }
+    }
+
+    private int selectNodePort(String department) throws Exception {
         List<Integer> ports = departmentNodes.getOrDefault(department, Collections.emptyList());
         List<Integer> alivePorts = new ArrayList<>();
 
@@ -106,22 +511,26 @@ public class CoordinatorRmi {
             throw new Exception("All nodes for department " + department + " are down");
         }
 
+        //Load counts every coordinator's commands, so coordinators don't all pick the same idle node
         int selectedPort = alivePorts.stream()
-                .min(Comparator.comparingInt(p -> nodeLoad.getOrDefault(p, 0)))
+                .min(Comparator.comparingLong(cluster::load))
                 .orElse(alivePorts.get(0));
 
         incrementNodeLoad(selectedPort);
-        return getNodeService(selectedPort);
+        return selectedPort;
     }
 
-    private static Object executeNodeCommand(FileCommand command, NodeService node) {
+    private Object executeNodeCommand(FileCommand command, NodeService node) {
+        String traceId = Tracer.currentId();
         try {
             switch (command.getType()) {
                 case ADD:
                 case UPDATE:
-                    return node.writeFile(command.getFileName(), command.getContent());
+                    return node.writeFile(command.getFileName(), command.getContent(), traceId);
                 case DELETE:
-                    return node.deleteFile(command.getFileName());
+                    return node.deleteFile(command.getFileName(), traceId);
+                case SEND_FILE:
+                    return node.sendFile(command.getFileName(), traceId);
                 default:
                     return "Unsupported command type";
             }
@@ -131,66 +540,122 @@ public class CoordinatorRmi {
     }
 
     // Helper Methods
-    private static NodeService getNodeService(int port) {
+    private NodeService getNodeService(int port) {
+        long start = System.nanoTime();
         try {
-            Registry registry = LocateRegistry.getRegistry("localhost", port);
-            return (NodeService) registry.lookup("NodeService");
+            NodeService node = transport.connect(port);
+            cluster.recordNode(port, true);
+            return node;
         } catch (Exception e) {
             System.out.println("Failed to connect to node on port " + port + ": " + e.getMessage());
+            cluster.recordNode(port, false);
             return null;
+        } finally {
+            Tracer.span("connect:" + port, start);
         }
     }
 
-    private static boolean isNodeAlive(int port) {
-        return getNodeService(port) != null;
+    //A node another coordinator just failed to reach is skipped without trying again
+    private boolean isNodeAlive(int port) {
+        return !cluster.knownDown(port) && getNodeService(port) != null;
     }
 
-    private static Map<String, Object> validateUser(String username) {
-        Map<String, Map<String, Object>> users = loadUsers();
-        return users.values().stream()
-                .filter(u -> u.get("username").toString().equalsIgnoreCase(username))
-                .findFirst()
-                .orElse(null);
-    }
-
-    private static boolean validateDepartmentAccess(FileCommand cmd, Map<String, Object> user) {
-        String userDept = user.get("department").toString().toLowerCase();
+    private boolean validateDepartmentAccess(FileCommand cmd, User user) {
+        String userDept = user.getDepartment().toLowerCase();
         String cmdDept = cmd.getDepartment().toLowerCase();
         return userDept.equals(cmdDept);
     }
 
-    private static Map<String, Map<String, Object>> loadUsers() {
-        try (Reader reader = new FileReader(USERS_FILE)) {
-            Type type = new TypeToken<Map<String, Map<String, Object>>>() {}.getType();
-            return new Gson().fromJson(reader, type);
-        } catch (IOException e) {
-            System.out.println("Failed to load users: " + e.getMessage());
-            return new HashMap<>();
-        }
-    }
-
-    private static List<Integer> getAllNodePorts() {
+    private List<Integer> getAllNodePorts() {
         List<Integer> ports = new ArrayList<>();
         departmentNodes.values().forEach(ports::addAll);
         return ports;
     }
 
-    private static void incrementNodeLoad(int port) {
-        nodeLoad.put(port, nodeLoad.getOrDefault(port, 0) + 1);
+    //Other nodes of the same department, they hold the same files once sync has run
+    private List<Integer> getReplicaPorts(int port) {
+        for (List<Integer> ports : departmentNodes.values()) {
+            if (ports.contains(port)) {
+                List<Integer> replicas = new ArrayList<>(ports);
+                replicas.remove(Integer.valueOf(port));
+                return replicas;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private void incrementNodeLoad(int port) {
+        cluster.recordDispatch(port);
+    }
+
+    //Keep the name index current with writes and deletes that went through this coordinator
+    private void recordInNameIndex(FileCommand command, int port, Object result) {
+        if (!(result instanceof String)) return;
+        String message = (String) result;
+        switch (command.getType()) {
+            case ADD:
+            case UPDATE:
+                if (message.startsWith("File saved")) nameIndex.add(command.getFileName(), port);
+                break;
+            case DELETE:
+                if (message.equals("File deleted.") || message.equals("File not found.")) {
+                    nameIndex.remove(command.getFileName(), port);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    //Full listings catch files that reached nodes by sync or by hand
+    private void refreshNameIndexLoop() {
+        while (true) {
+            refreshNameIndex();
+            try {
+                Thread.sleep(INDEX_REFRESH_SECONDS * 1000L);
+            } catch (InterruptedException e) {
+                System.out.println("Name index refresh interrupted: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void refreshNameIndex() {
+        for (int port : getAllNodePorts()) {
+            List<String> listed = new ArrayList<>();
+            String cursor = null;
+            try {
+                while (true) {
+                    String after = cursor;
+                    String[] page = asyncNodes.call(port, node -> node.listFiles("", after, MAX_PAGE_SIZE))
+                            .get(VIEW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    listed.addAll(Arrays.asList(page));
+                    if (page.length < MAX_PAGE_SIZE) break;
+                    cursor = page[page.length - 1];
+                }
+                nameIndex.replaceNode(port, listed);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException | TimeoutException e) {
+                //Unreachable node keeps its last known names until it answers again
+            }
+        }
     }
 
-    private static void processRetryQueue() {
+    private void processRetryQueue() {
         while (true) {
             try {
                 Thread.sleep(30000);
                 retryPendingRequests();
             } catch (InterruptedException e) {
                 System.out.println("Retry thread interrupted: " + e.getMessage());
+                return;
             }
         }
     }
 
-    private static void retryPendingRequests() {
+    private void retryPendingRequests() {
         if (retryQueue.isEmpty()) return;
 
         System.out.println("Retrying failed requests...");
@@ -199,34 +664,30 @@ public class CoordinatorRmi {
         while (iterator.hasNext()) {
             FileCommand cmd = iterator.next();
             if (processRetryCommand(cmd)) {
+                retrySuccesses.increment();
                 iterator.remove();
+            } else {
+                retryFailures.increment();
             }
         }
     }
 
-    private static boolean processRetryCommand(FileCommand cmd) {
+    private boolean processRetryCommand(FileCommand cmd) {
         if (cmd.getType() == CommandType.VIEW) {
             return retryViewCommand(cmd);
         }
         return retryDepartmentCommand(cmd);
     }
 
-    private static boolean retryViewCommand(FileCommand cmd) {
-        for (int port : getAllNodePorts()) {
-            try {
-                NodeService node = getNodeService(port);
-                if (node != null && node.hasFile(cmd.getFileName())) {
-                    forwardToNode(new FileCommand(CommandType.SEND_FILE, cmd.getFileName(), "", "", cmd.getRequestedBy()), port);
-                    return true;
-                }
-            } catch (Exception e) {
-                System.out.println("Retry failed on port " + port + ": " + e.getMessage());
-            }
-        }
-        return false;
+    private boolean retryViewCommand(FileCommand cmd) {
+        Integer port = findNodeWithFile(cmd.getFileName());
+        if (port == null) return false;
+
+        forwardToNode(new FileCommand(CommandType.SEND_FILE, cmd.getFileName(), "", "", cmd.getRequestedBy()), port);
+        return true;
     }
 
-    private static boolean retryDepartmentCommand(FileCommand cmd) {
+    private boolean retryDepartmentCommand(FileCommand cmd) {
         List<Integer> candidates = departmentNodes.get(cmd.getDepartment().toLowerCase());
         if (candidates == null) return false;
 
@@ -244,11 +705,11 @@ public class CoordinatorRmi {
         return false;
     }
 
-    private static void forwardToNode(FileCommand command, int port) {
+    private void forwardToNode(FileCommand command, int port) {
         try {
             NodeService node = getNodeService(port);
             if (node != null) {
-                executeNodeCommand(command, node);
+                recordInNameIndex(command, port, executeNodeCommand(command, node));
                 incrementNodeLoad(port);
             }
         } catch (Exception e) {
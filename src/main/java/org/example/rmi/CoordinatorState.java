@@ -0,0 +1,71 @@
+package org.example.rmi;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/* What one coordinator tells the others about itself, replaced as a whole by newer states.
+   Newer means a later incarnation (the coordinator restarted) or a higher heartbeat within one.
+   The retry queue is only described by a digest, peers fetch the commands when it changes */
+public class CoordinatorState implements Serializable {
+    private final int port;
+    private final long incarnation;
+    private final long heartbeat;
+    private final Map<Integer, Long> dispatched;
+    private final Map<Integer, Long> nodeSeenUp;
+    private final Map<Integer, Long> nodeSeenDown;
+    private final long retryDigest;
+    private final int retryCount;
+
+    public CoordinatorState(int port, long incarnation, long heartbeat, Map<Integer, Long> dispatched,
+                            Map<Integer, Long> nodeSeenUp, Map<Integer, Long> nodeSeenDown, long retryDigest,
+                            int retryCount) {
+        this.port = port;
+        this.incarnation = incarnation;
+        this.heartbeat = heartbeat;
+        this.dispatched = dispatched;
+        this.nodeSeenUp = nodeSeenUp;
+        this.nodeSeenDown = nodeSeenDown;
+        this.retryDigest = retryDigest;
+        this.retryCount = retryCount;
+    }
+
+    public boolean newerThan(CoordinatorState other) {
+        return other == null || incarnation > other.incarnation
+                || (incarnation == other.incarnation && heartbeat > other.heartbeat);
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public long getIncarnation() {
+        return incarnation;
+    }
+
+    public long getHeartbeat() {
+        return heartbeat;
+    }
+
+    //Commands this coordinator has sent to each node port since it started
+    public Map<Integer, Long> getDispatched() {
+        return dispatched;
+    }
+
+    //Wall clock millis of this coordinator's last successful and failed lookup of each node
+    public Map<Integer, Long> getNodeSeenUp() {
+        return nodeSeenUp;
+    }
+
+    public Map<Integer, Long> getNodeSeenDown() {
+        return nodeSeenDown;
+    }
+
+    //Changes whenever the commands waiting in this coordinator's retry queue change
+    public long getRetryDigest() {
+        return retryDigest;
+    }
+
+    public int getRetryCount() {
+        return retryCount;
+    }
+}
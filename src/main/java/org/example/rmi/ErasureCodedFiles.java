@@ -0,0 +1,235 @@
+package org.example.rmi;
+
+import org.example.metrics.Counter;
+import org.example.metrics.MetricsRegistry;
+import org.example.model.Fragment;
+import org.example.node.ReedSolomon;
+import org.example.node.VersionedStore;
+import org.example.trace.Tracer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ Large files kept as Reed-Solomon fragments instead of a whole copy on every node. With
+ -Derasure.scheme=k+m (e.g. 4+2, off when unset) an ADD/UPDATE of at least -Derasure.minBytes
+ UTF-8 bytes (default 1 MiB) is cut into k data and m parity fragments placed round robin over the
+ live nodes, the department's own nodes first, and any whole copies of the name are deleted. The
+ file then takes (k+m)/k of its size in total instead of its size once per node.
+ Older generations are deleted only after every fragment of the new one is stored, a write that
+ stores fewer removes what it stored, so a failed overwrite leaves the previous content readable.
+ A read asks every node for its fragments in parallel and decodes the newest generation that k
+ fragments came back for, once every node answered or -Derasure.readWaitMillis (default 2000)
+ passed. With fewer than k+m nodes some nodes hold several fragments, so a file survives fewer
+ node failures than m; the write result says how many.
+ Fragments are not synced between nodes, and a later whole-copy write of the name wins over them
+ on reads. There is no access tracking, so "cold" is approximated by size alone.
+ */
+public class ErasureCodedFiles {
+    private static final int MIN_BYTES = Integer.getInteger("erasure.minBytes", 1024 * 1024);
+    private static final long READ_WAIT_MILLIS = Long.getLong("erasure.readWaitMillis", 2000);
+    private static final int TIMEOUT_SECONDS = 10;
+
+    private final AsyncNodeService asyncNodes;
+    private final ReedSolomon codec;
+    private final Map<String, ReedSolomon> decoders = new ConcurrentHashMap<>();
+    private final AtomicLong lastGeneration = new AtomicLong();
+    private final Counter writes = MetricsRegistry.global().counter("coordinator_erasure_writes_total",
+            "Files written as erasure coded fragments");
+    private final Counter reads = MetricsRegistry.global().counter("coordinator_erasure_reads_total",
+            "Files read back from erasure coded fragments");
+    private final Counter reconstructions = MetricsRegistry.global().counter("coordinator_erasure_reconstructions_total",
+            "Erasure coded reads that had to rebuild data fragments from parity");
+
+    //scheme is "k+m", null or empty turns erasure coding off
+    public ErasureCodedFiles(AsyncNodeService asyncNodes, String scheme) {
+        this.asyncNodes = asyncNodes;
+        if (scheme == null || scheme.trim().isEmpty()) {
+            this.codec = null;
+            return;
+        }
+        String[] parts = scheme.trim().split("\\+");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Erasure scheme must look like 4+2, got " + scheme);
+        }
+        this.codec = decoder(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+    }
+
+    public boolean enabled() {
+        return codec != null;
+    }
+
+    public boolean applies(String content) {
+        //A char is at most 3 bytes, so only borderline content is measured
+        return codec != null && content != null && (long) content.length() * 3 >= MIN_BYTES
+                && VersionedStore.utf8Length(content) >= MIN_BYTES;
+    }
+
+    //Spread the fragments over the nodes, then remove older generations and whole copies so reads can't find a stale one first
+    public String write(String fileName, String content, List<Integer> nodes) {
+        if (nodes.isEmpty()) {
+            return "No live node to store " + fileName + " on";
+        }
+
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        byte[][] shards = codec.encode(bytes);
+        long generation = nextGeneration();
+        String traceId = Tracer.currentId();
+
+        int[] perNode = new int[nodes.size()];
+        List<CompletableFuture<Boolean>> stores = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            int slot = i % nodes.size();
+            perNode[slot]++;
+            Fragment fragment = new Fragment(generation, i, codec.dataShards(), codec.parityShards(), bytes.length, shards[i]);
+            stores.add(asyncNodes.call(nodes.get(slot), node -> node.writeFragment(fileName, fragment, traceId)));
+        }
+
+        int stored = 0;
+        for (CompletableFuture<Boolean> store : stores) {
+            if (Boolean.TRUE.equals(await(store))) stored++;
+        }
+        if (stored < shards.length) {
+            deleteGenerations(fileName, nodes, generation, generation, traceId);
+            return "Erasure coded write of " + fileName + " failed: " + stored + " of " + shards.length + " fragments stored";
+        }
+
+        deleteGenerations(fileName, nodes, Long.MIN_VALUE, generation - 1, traceId);
+        List<CompletableFuture<String>> deletes = new ArrayList<>();
+        for (int port : nodes) {
+            deletes.add(asyncNodes.call(port, node -> node.deleteFile(fileName, traceId)));
+        }
+        deletes.forEach(ErasureCodedFiles::await);
+
+        writes.increment();
+        return String.format("File saved: %s erasure coded %d+%d on %d nodes, survives %d failed nodes",
+                fileName, codec.dataShards(), codec.parityShards(), Math.min(nodes.size(), shards.length),
+                tolerableFailures(perNode, codec.parityShards()));
+    }
+
+    private void deleteGenerations(String fileName, List<Integer> nodes, long from, long to, String traceId) {
+        List<CompletableFuture<Boolean>> deletes = new ArrayList<>();
+        for (int port : nodes) {
+            deletes.add(asyncNodes.call(port, node -> node.deleteFragmentGenerations(fileName, from, to, traceId)));
+        }
+        deletes.forEach(ErasureCodedFiles::await);
+    }
+
+    //Completes with the newest decodable content once every node answered or the wait ran out, null when no generation has k fragments
+    public CompletableFuture<String> read(String fileName, List<Integer> ports) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        if (ports.isEmpty()) {
+            result.complete(null);
+            return result;
+        }
+
+        String traceId = Tracer.currentId();
+        Map<Long, Map<Integer, Fragment>> generations = new HashMap<>();
+        AtomicInteger remaining = new AtomicInteger(ports.size());
+        List<CompletableFuture<Fragment[]>> calls = new ArrayList<>();
+        for (int port : ports) {
+            CompletableFuture<Fragment[]> call = asyncNodes.call(port, node -> node.readFragments(fileName, traceId));
+            calls.add(call);
+            call.whenComplete((fragments, error) -> {
+                if (error instanceof CancellationException) return;
+                if (error == null) collect(generations, fragments);
+                if (remaining.decrementAndGet() == 0) complete(result, generations);
+            });
+        }
+        CompletableFuture.delayedExecutor(READ_WAIT_MILLIS, TimeUnit.MILLISECONDS).execute(() -> complete(result, generations));
+        result.whenComplete((content, error) -> calls.forEach(call -> call.cancel(true)));
+        return result;
+    }
+
+    private void complete(CompletableFuture<String> result, Map<Long, Map<Integer, Fragment>> generations) {
+        if (result.isDone()) return;
+        String content = decodeNewest(generations);
+        if (result.complete(content) && content != null) reads.increment();
+    }
+
+    //Remove the file's fragments from every node, true when any node had some
+    public boolean delete(String fileName, List<Integer> ports) {
+        String traceId = Tracer.currentId();
+        List<CompletableFuture<Boolean>> deletes = new ArrayList<>();
+        for (int port : ports) {
+            deletes.add(asyncNodes.call(port, node -> node.deleteFragments(fileName, traceId)));
+        }
+        boolean deleted = false;
+        for (CompletableFuture<Boolean> delete : deletes) {
+            deleted |= Boolean.TRUE.equals(await(delete));
+        }
+        return deleted;
+    }
+
+    private static void collect(Map<Long, Map<Integer, Fragment>> generations, Fragment[] fragments) {
+        synchronized (generations) {
+            for (Fragment fragment : fragments) {
+                generations.computeIfAbsent(fragment.getGeneration(), g -> new HashMap<>()).put(fragment.getIndex(), fragment);
+            }
+        }
+    }
+
+    //A stale generation left on a node that missed the cleanup never wins over a newer decodable one
+    private String decodeNewest(Map<Long, Map<Integer, Fragment>> generations) {
+        synchronized (generations) {
+            List<Long> newestFirst = new ArrayList<>(generations.keySet());
+            newestFirst.sort(Collections.reverseOrder());
+            for (long generation : newestFirst) {
+                Map<Integer, Fragment> byIndex = generations.get(generation);
+                Fragment any = byIndex.values().iterator().next();
+                if (byIndex.size() < any.getDataShards()) continue;
+
+                ReedSolomon decoder = decoder(any.getDataShards(), any.getParityShards());
+                byte[][] shards = new byte[any.getDataShards() + any.getParityShards()][];
+                byIndex.forEach((index, shard) -> shards[index] = shard.getData());
+                for (int i = 0; i < any.getDataShards(); i++) {
+                    if (shards[i] == null) {
+                        reconstructions.increment();
+                        break;
+                    }
+                }
+                return new String(decoder.decode(shards, any.getLength()), StandardCharsets.UTF_8);
+            }
+            return null;
+        }
+    }
+
+    private ReedSolomon decoder(int dataShards, int parityShards) {
+        return decoders.computeIfAbsent(dataShards + "+" + parityShards, key -> new ReedSolomon(dataShards, parityShards));
+    }
+
+    //Microsecond clock, strictly increasing within this coordinator so two quick writes never share one
+    private long nextGeneration() {
+        long now = System.currentTimeMillis() * 1000;
+        return lastGeneration.updateAndGet(last -> Math.max(last + 1, now));
+    }
+
+    //Nodes that can fail together, taking the fullest ones first, without losing more than parity fragments
+    private static int tolerableFailures(int[] perNode, int parityShards) {
+        int[] counts = perNode.clone();
+        Arrays.sort(counts);
+        int lost = 0;
+        int failures = 0;
+        for (int i = counts.length - 1; i >= 0; i--) {
+            lost += counts[i];
+            if (lost > parityShards) break;
+            failures++;
+        }
+        return failures;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            System.out.println("Erasure coded call failed: " + e.getMessage());
+            return null;
+        }
+    }
+}
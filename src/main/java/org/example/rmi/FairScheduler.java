@@ -0,0 +1,115 @@
+package org.example.rmi;
+
+import java.util.*;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ Worker pool with one queue per department, served weighted round robin. A department with
+ weight 2 gets two tasks run for every one of a weight 1 department while both have a backlog,
+ so a department flooding the coordinator only delays itself.
+ */
+public class FairScheduler {
+    private final Map<String, Deque<Runnable>> queues = new HashMap<>();
+    private final Map<String, Integer> credits = new HashMap<>();
+    private final Deque<String> activeDepartments = new ArrayDeque<>();
+    private final Map<String, Integer> weights;
+    private final int maxQueuedPerDepartment;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    public FairScheduler(int workers, int maxQueuedPerDepartment, Map<String, Integer> weights) {
+        this.maxQueuedPerDepartment = maxQueuedPerDepartment;
+        this.weights = weights;
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::runWorker, "fair-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    //Returns false when the department already has a full backlog
+    public boolean submit(String department, Runnable task) {
+        lock.lock();
+        try {
+            Deque<Runnable> queue = queues.computeIfAbsent(department, d -> new ArrayDeque<>());
+            if (queue.size() >= maxQueuedPerDepartment) {
+                return false;
+            }
+            if (queue.isEmpty()) {
+                activeDepartments.addLast(department);
+            }
+            queue.addLast(task);
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int queuedTasks() {
+        lock.lock();
+        try {
+            return queues.values().stream().mapToInt(Deque::size).sum();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Runnable take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (activeDepartments.isEmpty()) {
+                notEmpty.await();
+            }
+
+            String department = activeDepartments.peekFirst();
+            int credit = credits.getOrDefault(department, 0);
+            if (credit == 0) {
+                credit = weights.getOrDefault(department, 1);
+            }
+
+            Deque<Runnable> queue = queues.get(department);
+            Runnable task = queue.pollFirst();
+            credit--;
+
+            if (queue.isEmpty()) {
+                activeDepartments.pollFirst();
+                credits.remove(department);
+            } else if (credit == 0) {
+                activeDepartments.addLast(activeDepartments.pollFirst());
+                credits.remove(department);
+            } else {
+                credits.put(department, credit);
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runWorker() {
+        while (true) {
+            try {
+                take().run();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                System.out.println("Worker task failed: " + e.getMessage());
+            }
+        }
+    }
+
+    //Parses "development:2,qa:1" into department weights
+    public static Map<String, Integer> parseWeights(String spec) {
+        Map<String, Integer> weights = new HashMap<>();
+        if (spec == null || spec.isBlank()) return weights;
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.split(":");
+            if (parts.length == 2) {
+                weights.put(parts[0].trim().toLowerCase(), Math.max(1, Integer.parseInt(parts[1].trim())));
+            }
+        }
+        return weights;
+    }
+}
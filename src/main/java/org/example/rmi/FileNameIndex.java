@@ -0,0 +1,111 @@
+package org.example.rmi;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/*
+ Coordinator side index of every file name in the cluster and the nodes holding it, so SEARCH is
+ answered without asking nodes. A sorted map serves prefix queries, a trigram index serves
+ case-insensitive substring queries. Fed by periodic node listings and by the coordinator's own
+ ADD/UPDATE/DELETE results.
+ */
+public class FileNameIndex {
+    private static final int GRAM = 3;
+
+    private final ConcurrentSkipListMap<String, Set<Integer>> names = new ConcurrentSkipListMap<>();
+    private final Map<String, Set<String>> trigrams = new ConcurrentHashMap<>();
+
+    public synchronized void add(String name, int port) {
+        Set<Integer> ports = names.get(name);
+        if (ports == null) {
+            ports = ConcurrentHashMap.newKeySet();
+            names.put(name, ports);
+            for (String gram : grams(name)) {
+                trigrams.computeIfAbsent(gram, g -> ConcurrentHashMap.newKeySet()).add(name);
+            }
+        }
+        ports.add(port);
+    }
+
+    public synchronized void remove(String name, int port) {
+        Set<Integer> ports = names.get(name);
+        if (ports == null) return;
+        ports.remove(port);
+        if (ports.isEmpty()) {
+            names.remove(name);
+            for (String gram : grams(name)) {
+                Set<String> posting = trigrams.get(gram);
+                if (posting != null) {
+                    posting.remove(name);
+                    if (posting.isEmpty()) trigrams.remove(gram);
+                }
+            }
+        }
+    }
+
+    //Make the index agree with a full listing of one node
+    public synchronized void replaceNode(int port, Collection<String> listed) {
+        Set<String> current = new HashSet<>(listed);
+        for (Map.Entry<String, Set<Integer>> entry : names.entrySet()) {
+            if (entry.getValue().contains(port) && !current.contains(entry.getKey())) {
+                remove(entry.getKey(), port);
+            }
+        }
+        for (String name : current) {
+            add(name, port);
+        }
+    }
+
+    public List<String> prefix(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        for (String name : names.tailMap(prefix, true).keySet()) {
+            if (!name.startsWith(prefix) || result.size() >= limit) break;
+            result.add(name);
+        }
+        return result;
+    }
+
+    //Case-insensitive substring match, sorted, at most limit names
+    public List<String> substring(String text, int limit) {
+        String needle = text.toLowerCase();
+        Collection<String> candidates = needle.length() < GRAM ? names.keySet() : candidates(needle);
+
+        List<String> matches = new ArrayList<>();
+        for (String name : candidates) {
+            if (name.toLowerCase().contains(needle)) matches.add(name);
+        }
+        Collections.sort(matches);
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    //Names holding every trigram of the needle, starting from the rarest trigram
+    private Collection<String> candidates(String needle) {
+        List<Set<String>> postings = new ArrayList<>();
+        for (String gram : grams(needle)) {
+            Set<String> posting = trigrams.get(gram);
+            if (posting == null) return Collections.emptyList();
+            postings.add(posting);
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+
+        Set<String> result = new HashSet<>(postings.get(0));
+        for (int i = 1; i < postings.size() && !result.isEmpty(); i++) {
+            result.retainAll(postings.get(i));
+        }
+        return result;
+    }
+
+    private static Set<String> grams(String text) {
+        String lower = text.toLowerCase();
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= lower.length(); i++) {
+            grams.add(lower.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+}
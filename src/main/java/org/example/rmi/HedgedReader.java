@@ -0,0 +1,128 @@
+package org.example.rmi;
+
+import org.example.metrics.Counter;
+import org.example.metrics.MetricsRegistry;
+import org.example.trace.Trace;
+import org.example.trace.Tracer;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ Reads a file from one node and, if it hasn't answered within the recent latency percentile,
+ sends the same read to another replica and uses whichever answers first. Hedges are capped
+ at a share of all reads so a slow cluster doesn't get twice the load, and take a call permit of
+ the replica like any other node call; a hedge is skipped when the replica has none free.
+ Every attempt's latency feeds the percentile, a loser cancelled by the other attempt's answer
+ counts with the time it had taken so far, so hedging doesn't hide how slow the slow node is.
+ Tuned with -Dhedge.percentile (default 95), -Dhedge.budget (default 0.05) and
+ -Dhedge.minDelayMs (default 5).
+ */
+public class HedgedReader {
+    private static final double PERCENTILE = Double.parseDouble(System.getProperty("hedge.percentile", "95"));
+    private static final double BUDGET = Double.parseDouble(System.getProperty("hedge.budget", "0.05"));
+    private static final long MIN_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("hedge.minDelayMs", 5));
+
+    private final AsyncNodeService asyncNodes;
+    private final AdmissionController admission;
+    private final LatencyTracker latencies = new LatencyTracker(1024, PERCENTILE);
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hedge-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Counter reads = MetricsRegistry.global().counter("coordinator_hedged_reads_total",
+            "Reads that went through the hedged reader");
+    private final Counter hedges = MetricsRegistry.global().counter("coordinator_hedges_total",
+            "Reads that sent a second request to a replica");
+    private final Counter hedgeWins = MetricsRegistry.global().counter("coordinator_hedge_wins_total",
+            "Hedged reads answered first by the replica");
+    private final Counter hedgesSkipped = MetricsRegistry.global().counter("coordinator_hedges_skipped_total",
+            "Hedges not sent because the replica had no free call permit");
+
+    public HedgedReader(AsyncNodeService asyncNodes, AdmissionController admission) {
+        this.asyncNodes = asyncNodes;
+        this.admission = admission;
+    }
+
+    public CompletableFuture<String> read(int primary, List<Integer> replicas, String fileName) {
+        reads.increment();
+        long start = System.nanoTime();
+        CompletableFuture<String> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+
+        Trace trace = Tracer.current();
+        String traceId = Tracer.currentId();
+        CompletableFuture<String> first = asyncNodes.call(primary, node -> node.sendFile(fileName, traceId));
+        first.whenComplete((content, error) -> finish(result, outstanding, content, error, start, false));
+
+        long delay = hedgeDelayNanos();
+        if (!replicas.isEmpty() && delay >= 0) {
+            ScheduledFuture<?> hedge = timer.schedule(() -> {
+                if (result.isDone() || !withinBudget()) return;
+
+                int replica = replicas.get(ThreadLocalRandom.current().nextInt(replicas.size()));
+                if (!admission.tryAcquireNode(replica)) {
+                    hedgesSkipped.increment();
+                    return;
+                }
+                hedges.increment();
+                outstanding.incrementAndGet();
+                long sentAt = System.nanoTime();
+                System.out.println("Hedging read of " + fileName + " from port " + primary + " to port " + replica);
+                if (trace != null) trace.attribute("hedgedTo", replica);
+                Trace previous = Tracer.attach(trace);
+                CompletableFuture<String> second;
+                try {
+                    second = asyncNodes.call(replica, node -> {
+                        if (!node.hasFile(fileName, traceId)) {
+                            throw new IllegalStateException("Replica on port " + replica + " has no " + fileName);
+                        }
+                        return node.sendFile(fileName, traceId);
+                    });
+                } finally {
+                    Tracer.attach(previous);
+                }
+                second.whenComplete((content, error) -> {
+                    admission.releaseNode(replica);
+                    finish(result, outstanding, content, error, sentAt, true);
+                });
+                result.whenComplete((content, error) -> second.cancel(true));
+            }, delay, TimeUnit.NANOSECONDS);
+            result.whenComplete((content, error) -> hedge.cancel(false));
+        }
+        result.whenComplete((content, error) -> first.cancel(true));
+        return result;
+    }
+
+    //First successful answer wins, the read only fails once every attempt failed
+    private void finish(CompletableFuture<String> result, AtomicInteger outstanding, String content, Throwable error,
+                        long sentAt, boolean hedged) {
+        if (error == null || error instanceof CancellationException) {
+            latencies.record(System.nanoTime() - sentAt);
+        }
+        if (error instanceof CancellationException) return;
+
+        if (error == null) {
+            if (result.complete(content) && hedged) hedgeWins.increment();
+        } else if (outstanding.decrementAndGet() == 0) {
+            result.completeExceptionally(error);
+        }
+    }
+
+    //-1 while there is no latency history to hedge on
+    private long hedgeDelayNanos() {
+        long percentile = latencies.percentileNanos();
+        return percentile < 0 ? -1 : Math.max(percentile, MIN_DELAY_NANOS);
+    }
+
+    private boolean withinBudget() {
+        return hedges.get() < BUDGET * reads.get();
+    }
+
+    public String stats() {
+        return String.format("reads=%d hedges=%d hedgeWins=%d hedgesSkipped=%d p%.0f=%.2fms", reads.get(), hedges.get(),
+                hedgeWins.get(), hedgesSkipped.get(), PERCENTILE, latencies.percentileNanos() / 1_000_000.0);
+    }
+}
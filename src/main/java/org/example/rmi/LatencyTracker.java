@@ -0,0 +1,40 @@
+package org.example.rmi;
+
+import java.util.Arrays;
+
+// Keeps the most recent latency samples and answers percentile queries over them
+public class LatencyTracker {
+    private static final int RECOMPUTE_EVERY = 64;
+
+    private final long[] samples;
+    private final double percentile;
+    private int next;
+    private int count;
+    private int sinceRecompute;
+    private volatile long cachedNanos = -1;
+
+    public LatencyTracker(int capacity, double percentile) {
+        this.samples = new long[capacity];
+        this.percentile = percentile;
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) count++;
+
+        //Sorting on every sample would cost more than the reads being measured
+        if (++sinceRecompute >= RECOMPUTE_EVERY || cachedNanos < 0) {
+            sinceRecompute = 0;
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+            cachedNanos = sorted[Math.max(0, Math.min(index, count - 1))];
+        }
+    }
+
+    //The tracked percentile in nanoseconds, or -1 before the first sample
+    public long percentileNanos() {
+        return cachedNanos;
+    }
+}
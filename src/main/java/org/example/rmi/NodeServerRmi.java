@@ -1,36 +1,126 @@
 package org.example.rmi;
 
-import org.example.rmi.NodeService;
+import org.example.metrics.Counter;
+import org.example.metrics.Histogram;
+import org.example.metrics.MetricsRegistry;
+import org.example.model.ChangeSet;
+import org.example.model.Fragment;
+import org.example.model.Payload;
+import org.example.node.ContentStore;
+import org.example.node.DirectoryIndex;
+import org.example.node.FragmentStore;
+import org.example.node.StorageLayout;
+import org.example.node.SyncPlanner;
+import org.example.node.VersionedStore;
+import org.example.protocol.Compression;
+import org.example.trace.Trace;
+import org.example.trace.Tracer;
+import org.example.transport.NodeTransport;
 import java.io.*;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
-import java.rmi.server.UnicastRemoteObject;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
-public class NodeServerRmi implements NodeService {
+public class NodeServerRmi implements NodeService, Closeable {
     private final String department;
     private final int port;
     private static final String STORAGE_DIR = "node_storage/";
+    private static final List<Integer> DEFAULT_PEERS = Arrays.asList(5001, 5002, 5003);
+    private final List<Integer> peers;
+    private final NodeTransport transport;
+    private final long syncIntervalMillis;
+    private final StorageLayout layout;
+    private final DirectoryIndex index;
+    private final VersionedStore store;
+    private final FragmentStore fragments;
+    private final MetricsRegistry metrics = MetricsRegistry.global();
+    private final Histogram readLatency = operation("read");
+    private final Histogram writeLatency = operation("write");
+    private final Histogram deleteLatency = operation("delete");
+    private final Histogram listLatency = operation("list");
+    private final Counter syncTransfers = syncFiles("transfer");
+    private final Counter syncHashLinks = syncFiles("hash");
+    private final Counter syncBytes = metrics.counter("node_sync_bytes_total",
+            "Content bytes received by sync, before and after wire compression", "kind", "raw");
+    private final Counter syncWireBytes = metrics.counter("node_sync_bytes_total",
+            "Content bytes received by sync, before and after wire compression", "kind", "wire");
+    private final Counter syncFailures = metrics.counter("node_sync_failures_total", "Sync rounds with a peer that failed");
 
-    public NodeServerRmi(int port, String department) {
+    private Thread syncThread;
+    private Thread shutdownHook;
+
+    public NodeServerRmi(int port, String department, NodeTransport transport) throws IOException {
+        this(port, department, Paths.get(STORAGE_DIR), DEFAULT_PEERS, transport);
+    }
+
+    /* Files live in storageRoot/<department>, sync pulls from the peer ports (this node's own port is skipped)
+       over the transport, which must be the one the peers serve on */
+    public NodeServerRmi(int port, String department, Path storageRoot, List<Integer> peers,
+                         NodeTransport transport) throws IOException {
         this.port = port;
         this.department = department.toLowerCase();
+        this.peers = new ArrayList<>(peers);
+        this.peers.remove(Integer.valueOf(port));
+        this.transport = transport;
+        this.syncIntervalMillis = TimeUnit.SECONDS.toMillis(Long.getLong("sync.intervalSeconds", 60));
+        this.layout = StorageLayout.open(storageRoot.resolve(this.department));
+        this.index = new DirectoryIndex(layout);
+        this.store = new VersionedStore(layout,
+                Boolean.getBoolean("storage.dedup") ? new ContentStore(layout.root()) : null);
+        this.index.setHashes(store::cachedHash);
+        this.fragments = new FragmentStore(layout.root());
+        metrics.gauge("node_files", "Files in the node's directory index", index::size);
         initializeStorage();
         startSyncScheduler();
     }
 
+    private Histogram operation(String operation) {
+        return metrics.histogram("node_operation_seconds", "Latency of node operations", "operation", operation);
+    }
+
+    private Counter syncFiles(String mode) {
+        return metrics.counter("node_sync_files_total", "Files pulled from peers, by transfer or hash link", "mode", mode);
+    }
+
     private void initializeStorage() {
-        File dir = new File(STORAGE_DIR + department);
-        if (!dir.exists() && !dir.mkdirs()) {
-            System.err.println("Failed to create storage directory");
+        System.out.println("Storage layout for [" + department + "]: " + layout.describe());
+        try {
+            index.start();
+            for (DirectoryIndex.FileInfo info : index.entries()) {
+                if (info.getHash() != null) store.seedHash(info.getName(), info.getModifiedMillis(), info.getHash());
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to index storage directory: " + e.getMessage());
         }
+        //A snapshot saved at shutdown lets the next start keep its change sequence, so peers stay incremental
+        shutdownHook = new Thread(() -> {
+            try {
+                index.close();
+            } catch (IOException e) {
+                System.out.println("Failed to close index: " + e.getMessage());
+            }
+        }, "index-shutdown-" + port);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        store.startGarbageCollector();
     }
 
+    //Transport from -Dtransport, RMI by default
     public static void main(String[] args) {
+        serve(args, NodeTransport.fromSystemProperty());
+    }
+
+    //Usage: <port> <department>, shared with the socket NodeServer launcher
+    public static void serve(String[] args, NodeTransport transport) {
         if (args.length < 2) {
             System.out.println("Usage: java NodeServerRmi <port> <department>");
             return;
@@ -40,123 +130,277 @@ public class NodeServerRmi implements NodeService {
             int port = Integer.parseInt(args[0]);
             String department = args[1];
 
-            NodeServerRmi server = new NodeServerRmi(port, department);
-            NodeService stub = (NodeService) UnicastRemoteObject.exportObject(server, 0);
+            NodeServerRmi server = new NodeServerRmi(port, department, transport);
+            transport.serve(port, server);
+            MetricsRegistry.global().expose("node-" + port, Integer.getInteger("metrics.port", port + 4000));
 
-            Registry registry = LocateRegistry.createRegistry(port);
-            registry.rebind("NodeService", stub);
-
-            System.out.printf("NodeServer [%s] RMI ready on port %d%n", department, port);
+            System.out.printf("NodeServer [%s] %s ready on port %d%n", department, transport.name(), port);
         } catch (Exception e) {
             System.err.println("NodeServer exception: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
-    //Return list of files 
+    //Return list of files from the in-memory index
     @Override
     public String[] getSyncList() throws RemoteException {
-        File folder = new File(STORAGE_DIR + department);
-        String[] files = folder.list();
-        return files != null ? files : new String[0];
+        return index.names();
     }
 
     @Override
-    public String sendFile(String fileName) throws RemoteException {
-        return readWithLock(STORAGE_DIR + department + "/" + fileName);
+    public ChangeSet getChangesSince(long epoch, long sequence) throws RemoteException {
+        return index.changesSince(epoch, sequence);
     }
 
+    //Erasure coded names are listed with the indexed ones, a node may hold fragments of files it has no copy of
     @Override
-    public boolean hasFile(String fileName) throws RemoteException {
-        return new File(STORAGE_DIR + department + "/" + fileName).exists();
+    public String[] listFiles(String prefix, String after, int limit) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            TreeSet<String> names = new TreeSet<>(index.page(prefix, after, limit));
+            names.addAll(fragments.names(prefix == null ? "" : prefix, after, limit));
+            return names.stream().limit(limit).toArray(String[]::new);
+        } catch (IOException e) {
+            throw new RemoteException("List error: " + e.getMessage());
+        } finally {
+            listLatency.recordSince(start);
+        }
     }
 
+    //Reads the latest committed version without locking, writers never block readers
     @Override
-    public String writeFile(String fileName, String content) throws RemoteException {
-        return writeWithLock(STORAGE_DIR + department + "/" + fileName, content);
+    public String sendFile(String fileName, String traceId) throws RemoteException {
+        long start = System.nanoTime();
+        Trace trace = Tracer.start(traceId, component(), "read");
+        try {
+            String content = store.read(fileName);
+            Tracer.span("read-io", start);
+            return content == null ? "File not found." : content;
+        } catch (IOException e) {
+            throw new RemoteException("Read error: " + e.getMessage());
+        } finally {
+            readLatency.recordSince(start);
+            Tracer.finish(trace);
+        }
+    }
+
+    @Override
+    public String sendFileVersion(String fileName, long version, String traceId) throws RemoteException {
+        long start = System.nanoTime();
+        Trace trace = Tracer.start(traceId, component(), "read-version");
+        try {
+            String content = store.read(fileName, version);
+            Tracer.span("read-io", start);
+            return content == null ? "Version " + version + " of " + fileName + " not found." : content;
+        } catch (IOException e) {
+            throw new RemoteException("Read error: " + e.getMessage());
+        } finally {
+            readLatency.recordSince(start);
+            Tracer.finish(trace);
+        }
     }
 
     @Override
-    public String deleteFile(String fileName) throws RemoteException {
-        return deleteWithLock(STORAGE_DIR + department + "/" + fileName);
+    public Payload fetchFile(String fileName, boolean acceptCompressed) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            byte[] content = store.readBytes(fileName);
+            return content == null ? null : Payload.of(content, acceptCompressed);
+        } catch (IOException e) {
+            throw new RemoteException("Read error: " + e.getMessage());
+        } finally {
+            readLatency.recordSince(start);
+        }
     }
 
-    private String writeWithLock(String filePath, String content) throws RemoteException {
-        try (RandomAccessFile raf = new RandomAccessFile(filePath, "rw");
-             FileChannel channel = raf.getChannel();
-             FileLock lock = channel.lock()) {
-            raf.setLength(0);
-            raf.writeBytes(content);
-            return "File saved: " + filePath;
+    @Override
+    public Map<String, String> getContentHashes(String[] fileNames) throws RemoteException {
+        Map<String, String> hashes = new HashMap<>();
+        try {
+            for (String fileName : fileNames) {
+                String hash = store.contentHash(fileName);
+                if (hash != null) hashes.put(fileName, hash);
+            }
+        } catch (IOException e) {
+            throw new RemoteException("Hash error: " + e.getMessage());
+        }
+        return hashes;
+    }
+
+    @Override
+    public boolean hasFile(String fileName, String traceId) throws RemoteException {
+        Trace trace = Tracer.start(traceId, component(), "probe");
+        try {
+            return index.contains(fileName);
+        } finally {
+            Tracer.finish(trace);
+        }
+    }
+
+    @Override
+    public String writeFile(String fileName, String content, String traceId) throws RemoteException {
+        long start = System.nanoTime();
+        Trace trace = Tracer.start(traceId, component(), "write");
+        try {
+            long version = store.write(fileName, content);
+            long indexStart = System.nanoTime();
+            index.recordWrite(fileName, VersionedStore.utf8Length(content), version);
+            Tracer.span("index-update", indexStart);
+            return "File saved: " + layout.resolve(fileName) + " (version " + version + ")";
         } catch (IOException e) {
             throw new RemoteException("Write error: " + e.getMessage());
+        } finally {
+            writeLatency.recordSince(start);
+            Tracer.finish(trace);
         }
     }
 
-    private String readWithLock(String filePath) throws RemoteException {
-        File file = new File(filePath);
-        if (!file.exists()) return "File not found.";
+    @Override
+    public String deleteFile(String fileName, String traceId) throws RemoteException {
+        long start = System.nanoTime();
+        Trace trace = Tracer.start(traceId, component(), "delete");
+        try {
+            boolean deleted = store.delete(fileName);
+            index.recordDelete(fileName);
+            return deleted ? "File deleted." : "File not found.";
+        } catch (IOException e) {
+            throw new RemoteException("Delete error: " + e.getMessage());
+        } finally {
+            deleteLatency.recordSince(start);
+            Tracer.finish(trace);
+        }
+    }
 
-        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
-             FileChannel channel = raf.getChannel();
-             FileLock lock = channel.lock(0L, Long.MAX_VALUE, true)) {
-            byte[] bytes = new byte[(int) raf.length()];
-            raf.readFully(bytes);
-            return new String(bytes);
+    @Override
+    public boolean writeFragment(String fileName, Fragment fragment, String traceId) throws RemoteException {
+        long start = System.nanoTime();
+        Trace trace = Tracer.start(traceId, component(), "write-fragment");
+        try {
+            return fragments.write(fileName, fragment);
         } catch (IOException e) {
-            throw new RemoteException("Read error: " + e.getMessage());
+            throw new RemoteException("Fragment write error: " + e.getMessage());
+        } finally {
+            writeLatency.recordSince(start);
+            Tracer.finish(trace);
+        }
+    }
+
+    @Override
+    public Fragment[] readFragments(String fileName, String traceId) throws RemoteException {
+        long start = System.nanoTime();
+        Trace trace = Tracer.start(traceId, component(), "read-fragments");
+        try {
+            return fragments.read(fileName).toArray(new Fragment[0]);
+        } catch (IOException e) {
+            throw new RemoteException("Fragment read error: " + e.getMessage());
+        } finally {
+            readLatency.recordSince(start);
+            Tracer.finish(trace);
         }
     }
 
-    private String deleteWithLock(String filePath) throws RemoteException {
-        File file = new File(filePath);
-        if (!file.exists()) return "File not found.";
+    @Override
+    public boolean deleteFragments(String fileName, String traceId) throws RemoteException {
+        try {
+            return fragments.delete(fileName);
+        } catch (IOException e) {
+            throw new RemoteException("Fragment delete error: " + e.getMessage());
+        }
+    }
 
-        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
-             FileChannel channel = raf.getChannel();
-             FileLock lock = channel.lock()) {
-            boolean deleted = file.delete();
-            return deleted ? "File deleted." : "Failed to delete";
+    @Override
+    public boolean deleteFragmentGenerations(String fileName, long fromGeneration, long toGeneration, String traceId)
+            throws RemoteException {
+        Trace trace = Tracer.start(traceId, component(), "delete-fragments");
+        try {
+            return fragments.deleteGenerations(fileName, fromGeneration, toGeneration);
         } catch (IOException e) {
-            throw new RemoteException("Delete error: " + e.getMessage());
+            throw new RemoteException("Fragment delete error: " + e.getMessage());
+        } finally {
+            Tracer.finish(trace);
+        }
+    }
+
+    private String component() {
+        return "node-" + port;
+    }
+
+    //Stop syncing and save the index, for a node that is shut down without its JVM exiting
+    @Override
+    public void close() throws IOException {
+        syncThread.interrupt();
+        store.stopGarbageCollector();
+        index.close();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            //already shutting down
         }
     }
 
     private void startSyncScheduler() {
-        new Thread(() -> {
+        syncThread = new Thread(() -> {
             try {
                 while (true) {
-                    Thread.sleep(60_000);
+                    Thread.sleep(syncIntervalMillis);
                     System.out.println("Running sync at " + LocalDateTime.now());
                     syncWithOtherNodes();
+                    System.out.println("Compression: " + Compression.stats());
                 }
             } catch (InterruptedException e) {
-                System.out.println("Sync thread interrupted: " + e.getMessage());
+                System.out.println("Sync thread of node " + port + " stopped");
             }
-        }).start();
+        }, "node-sync-" + port);
+        syncThread.start();
     }
 
     private void syncWithOtherNodes() {
-        int[] allPorts = {5001, 5002, 5003};
-
-        for (int port : allPorts) {
-            if (port == this.port) continue;
-
+        for (int port : peers) {
             try {
-                Registry registry = LocateRegistry.getRegistry("localhost", port);
-                NodeService node = (NodeService) registry.lookup("NodeService");
+                NodeService node = transport.connect(port);
 
-                String[] theirFiles = node.getSyncList();
-                String[] myFiles = new File(STORAGE_DIR + department).list();
+                //Only what the peer changed since the last complete sync, the whole listing the first time
+                DirectoryIndex.PeerCursor cursor = index.peerCursor(port);
+                ChangeSet changes = cursor == null
+                        ? node.getChangesSince(0, 0)
+                        : node.getChangesSince(cursor.getEpoch(), cursor.getSequence());
+                List<String> missing = SyncPlanner.missing(changes.getNames(), index::contains);
+                if (missing.isEmpty()) {
+                    index.recordPeerCursor(port, changes.getEpoch(), changes.getSequence());
+                    continue;
+                }
 
-                for (String fileName : theirFiles) {
-                    if (!Arrays.asList(myFiles).contains(fileName)) {
-                        String content = node.sendFile(fileName);
-                        writeFile(fileName, content);
-                        System.out.println("Synced file: " + fileName + " from node " + port);
+                //Content this node already holds under another name is linked, not transferred
+                Map<String, String> hashes = store.deduplicates()
+                        ? node.getContentHashes(missing.toArray(new String[0]))
+                        : Collections.emptyMap();
+                for (String fileName : missing) {
+                    String hash = hashes.get(fileName);
+                    long version = hash == null ? -1 : store.writeExisting(fileName, hash);
+                    if (version > 0) {
+                        index.recordWrite(fileName, Files.size(layout.resolve(fileName)), version);
+                        syncHashLinks.increment();
+                        System.out.printf("Synced file: %s from node %d by hash, no transfer%n", fileName, port);
+                        continue;
+                    }
+                    //Stored as the bytes that arrived, never decoded into a String and encoded again
+                    Payload payload = node.fetchFile(fileName, true);
+                    if (payload == null) {
+                        //Deleted on the peer since it was listed, nothing to copy
+                        System.out.printf("Skipped sync of %s from node %d: no longer there%n", fileName, port);
+                        continue;
                     }
+                    index.recordWrite(fileName, payload.getRawLength(), store.write(fileName, payload.bytes()));
+                    syncTransfers.increment();
+                    syncBytes.add(payload.getRawLength());
+                    syncWireBytes.add(payload.getWireLength());
+                    System.out.printf("Synced file: %s from node %d (%d -> %d bytes, ratio %.2f)%n", fileName, port,
+                            payload.getRawLength(), payload.getWireLength(),
+                            Compression.ratio(payload.getRawLength(), payload.getWireLength()));
                 }
+                index.recordPeerCursor(port, changes.getEpoch(), changes.getSequence());
             } catch (Exception e) {
+                syncFailures.increment();
                 System.out.println("Sync failed with node " + port + ": " + e.getMessage());
             }
         }
@@ -1,23 +1,62 @@
 // NodeService.java
 package org.example.rmi;
 
+import org.example.model.ChangeSet;
+import org.example.model.Fragment;
+import org.example.model.Payload;
+
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.Map;
 
 public interface NodeService extends Remote {
     /* Return all nodes names inside directory,
        It uses to compare the files between nodes */
     String[] getSyncList() throws RemoteException;
 
-    //Return file as string, Send files between nodes
-    String sendFile(String fileName) throws RemoteException;
+    /* Names created or changed after the caller's cursor into this node's change sequence,
+       every name when the epoch doesn't match (first sync, or this node lost its index snapshot) */
+    ChangeSet getChangesSince(long epoch, long sequence) throws RemoteException;
+
+    /* Return up to limit file names in sorted order, after the cursor and starting with the prefix,
+       the coordinator merges these pages into the cluster wide VIEW_ALL listing */
+    String[] listFiles(String prefix, String after, int limit) throws RemoteException;
+
+    /* Return file as string, Send files between nodes.
+       Request-path methods take the coordinator's trace id (null when untraced) so the node can time its part */
+    String sendFile(String fileName, String traceId) throws RemoteException;
+
+    //A retained older (or the current) version by its number, version numbers are local to this node
+    String sendFileVersion(String fileName, long version, String traceId) throws RemoteException;
+
+    //Same as sendFile for node to node sync, deflated when the caller accepts it and the content compresses, null when the node doesn't have the file
+    Payload fetchFile(String fileName, boolean acceptCompressed) throws RemoteException;
+
+    /* SHA-256 of each named file this node has, names it doesn't have are left out,
+       sync uses it to link content the receiving node already stores instead of transferring it */
+    Map<String, String> getContentHashes(String[] fileNames) throws RemoteException;
 
     //Verification if this node has the file or no, It uses from coordinator for a view command.
-    boolean hasFile(String fileName) throws RemoteException;
+    boolean hasFile(String fileName, String traceId) throws RemoteException;
+
+    //Commit the content as a new version of the file, It uses for add and update command.
+    String writeFile(String fileName, String content, String traceId) throws RemoteException;
+
+    //Delete the live file, older versions stay until they expire, It uses for delete command.
+    String deleteFile(String fileName, String traceId) throws RemoteException;
+
+    /* Store one erasure coded fragment of the file, the coordinator spreads a file's fragments over nodes.
+       False when this node already holds a newer generation of the file */
+    boolean writeFragment(String fileName, Fragment fragment, String traceId) throws RemoteException;
+
+    //Every fragment of the file this node holds, empty when it has none
+    Fragment[] readFragments(String fileName, String traceId) throws RemoteException;
 
-    //Write the content on disk with lock, It uses for add and update command.
-    String writeFile(String fileName, String content) throws RemoteException;
+    //Drop this node's fragments of the file, true when it had any
+    boolean deleteFragments(String fileName, String traceId) throws RemoteException;
 
-    //Delete this file with lock, It uses for delete command.
-    String deleteFile(String fileName) throws RemoteException;
+    /* Drop only the fragments of generations from..to inclusive: older ones once a write completed,
+       or the new one when it didn't. True when any were removed */
+    boolean deleteFragmentGenerations(String fileName, long fromGeneration, long toGeneration, String traceId)
+            throws RemoteException;
 }
\ No newline at end of file
@@ -0,0 +1,110 @@
+package org.example.service;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.example.metrics.Counter;
+import org.example.metrics.MetricsRegistry;
+import org.example.model.User;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Signed access tokens carrying username, department and role, so the coordinator can authorize a
+ command without reading the user store. Coordinators issue them on LOGIN, clients never hold the
+ key. The HMAC secret is shared between coordinators through -Djwt.secret (at least 32 bytes);
+ without it every process signs with a random key of its own, so a token only works on the
+ coordinator that issued it. Tokens live -Djwt.ttlMinutes (default 720).
+ */
+public class JwtService {
+    private static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(Long.getLong("jwt.ttlMinutes", 720));
+    private static final int MAX_CACHED_TOKENS = 10_000;
+
+    private final SecretKey key;
+    private final Map<String, CachedUser> verified = new ConcurrentHashMap<>();
+    private final Counter cacheHits = MetricsRegistry.global().counter("auth_token_cache_total",
+            "Access token verifications by cache result", "result", "hit");
+    private final Counter cacheMisses = MetricsRegistry.global().counter("auth_token_cache_total",
+            "Access token verifications by cache result", "result", "miss");
+
+    //Generated on first use, shared by every JwtService in the process
+    private static class ProcessKey {
+        private static final SecretKey KEY = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+
+        static {
+            System.out.println("No -Djwt.secret set, access tokens are signed with a random key valid in this process only");
+        }
+    }
+
+    public JwtService() {
+        String secret = System.getProperty("jwt.secret");
+        this.key = secret == null ? ProcessKey.KEY : Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public JwtService(String secret) {
+        this.key = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String issue(User user) {
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+                .setSubject(user.getUsername())
+                .claim("department", user.getDepartment())
+                .claim("role", user.getRole())
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + TTL_MILLIS))
+                .signWith(key, SignatureAlgorithm.HS256)
+                .compact();
+    }
+
+    //Returns the user the token was issued to, or null if it is forged, malformed, expired or lacks a claim
+    public User verify(String token) {
+        if (token == null || token.isEmpty()) return null;
+
+        CachedUser cached = verified.get(token);
+        if (cached != null) {
+            if (cached.expiresAt > System.currentTimeMillis()) {
+                cacheHits.increment();
+                return cached.user;
+            }
+            verified.remove(token);
+            return null;
+        }
+
+        cacheMisses.increment();
+        try {
+            Claims claims = Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
+            String department = claims.get("department", String.class);
+            String role = claims.get("role", String.class);
+            if (claims.getSubject() == null || department == null || role == null || claims.getExpiration() == null) {
+                return null;
+            }
+            User user = new User(claims.getSubject(), department, role, token);
+            //Crude bound: a full cache starts over rather than tracking usage order
+            if (verified.size() >= MAX_CACHED_TOKENS) {
+                verified.clear();
+            }
+            verified.put(token, new CachedUser(user, claims.getExpiration().getTime()));
+            return user;
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static class CachedUser {
+        private final User user;
+        private final long expiresAt;
+
+        CachedUser(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
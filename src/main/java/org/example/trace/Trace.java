@@ -0,0 +1,78 @@
+package org.example.trace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Timings of one request on one process, spans may be added from any thread working on the request
+public class Trace {
+    private final String traceId;
+    private final String component;
+    private final String operation;
+    private final long startNanos = System.nanoTime();
+    private final long startMillis = System.currentTimeMillis();
+    private final List<Span> spans = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, String> attributes = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    static class Span {
+        final String name;
+        final long startMicros;
+        final long durationMicros;
+
+        Span(String name, long startMicros, long durationMicros) {
+            this.name = name;
+            this.startMicros = startMicros;
+            this.durationMicros = durationMicros;
+        }
+    }
+
+    Trace(String traceId, String component, String operation) {
+        this.traceId = traceId;
+        this.component = component;
+        this.operation = operation;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    //Record a span that began at beginNanos (System.nanoTime) and ends now
+    public void span(String name, long beginNanos) {
+        long now = System.nanoTime();
+        spans.add(new Span(name, (beginNanos - startNanos) / 1000, (now - beginNanos) / 1000));
+    }
+
+    public void attribute(String name, Object value) {
+        attributes.put(name, String.valueOf(value));
+    }
+
+    long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    Map<String, Object> toRecord() {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("traceId", traceId);
+        record.put("component", component);
+        record.put("operation", operation);
+        record.put("startMillis", startMillis);
+        record.put("totalMicros", elapsedNanos() / 1000);
+        synchronized (attributes) {
+            record.put("attributes", new LinkedHashMap<>(attributes));
+        }
+        synchronized (spans) {
+            List<Map<String, Object>> spanRecords = new ArrayList<>();
+            for (Span span : spans) {
+                Map<String, Object> spanRecord = new LinkedHashMap<>();
+                spanRecord.put("name", span.name);
+                spanRecord.put("startMicros", span.startMicros);
+                spanRecord.put("durationMicros", span.durationMicros);
+                spanRecords.add(spanRecord);
+            }
+            record.put("spans", spanRecords);
+        }
+        return record;
+    }
+}
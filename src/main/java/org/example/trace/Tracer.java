@@ -0,0 +1,123 @@
+package org.example.trace;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Per-process request tracing. A trace id is 16 hex digits plus "-1" when the request is sampled
+ (-Dtrace.sampleRate, default 0.01) or "-0" when it isn't; the coordinator makes one when the
+ client didn't and passes it to every node call. Each process times its own hops as spans and
+ appends one JSON line per trace to -Dtrace.log (default trace-<pid>.log) when the request was sampled
+ or took longer than -Dtrace.slowMs (default 200), so the coordinator and node lines of a slow
+ request can be joined on the id. Code deeper in the call adds spans through the thread's
+ current trace, which costs one ThreadLocal read when nothing is traced.
+ */
+public class Tracer {
+    private static final double SAMPLE_RATE = Double.parseDouble(System.getProperty("trace.sampleRate", "0.01"));
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("trace.slowMs", 200));
+    private static final String LOG_FILE = System.getProperty("trace.log",
+            "trace-" + ProcessHandle.current().pid() + ".log");
+    private static final int QUEUE_CAPACITY = 10_000;
+
+    private static final ThreadLocal<Trace> current = new ThreadLocal<>();
+    private static final BlockingQueue<String> pending = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final Gson gson = new Gson();
+    private static Thread writer;
+
+    private Tracer() {
+    }
+
+    public static String newTraceId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return String.format("%016x", random.nextLong()) + (random.nextDouble() < SAMPLE_RATE ? "-1" : "-0");
+    }
+
+    public static boolean isSampled(String traceId) {
+        return traceId != null && traceId.endsWith("-1");
+    }
+
+    //Start timing this process's part of the request and make it the thread's current trace, null id means untraced
+    public static Trace start(String traceId, String component, String operation) {
+        if (traceId == null) return null;
+        Trace trace = new Trace(traceId, component, operation);
+        current.set(trace);
+        return trace;
+    }
+
+    //Log the trace if it is sampled or slow, and clear it from the thread
+    public static void finish(Trace trace) {
+        if (trace == null) return;
+        if (current.get() == trace) current.remove();
+        if (isSampled(trace.getTraceId()) || trace.elapsedNanos() >= SLOW_NANOS) {
+            log(gson.toJson(trace.toRecord()));
+        }
+    }
+
+    public static Trace current() {
+        return current.get();
+    }
+
+    public static String currentId() {
+        Trace trace = current.get();
+        return trace == null ? null : trace.getTraceId();
+    }
+
+    //Run work for a trace on another thread, e.g. a pooled node call
+    public static Trace attach(Trace trace) {
+        Trace previous = current.get();
+        if (trace == null) {
+            current.remove();
+        } else {
+            current.set(trace);
+        }
+        return previous;
+    }
+
+    //Add a span to the thread's current trace, if any
+    public static void span(String name, long beginNanos) {
+        Trace trace = current.get();
+        if (trace != null) trace.span(name, beginNanos);
+    }
+
+    private static void log(String line) {
+        //Tracing must never slow the request down, a full queue drops the line
+        if (!pending.offer(line)) return;
+        synchronized (Tracer.class) {
+            if (writer == null) {
+                writer = new Thread(Tracer::writeLoop, "trace-writer");
+                writer.setDaemon(true);
+                writer.start();
+            }
+        }
+    }
+
+    private static void writeLoop() {
+        try (Writer out = Files.newBufferedWriter(Paths.get(LOG_FILE), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            while (true) {
+                String line = pending.take();
+                out.write(line);
+                out.write('\n');
+                while ((line = pending.poll()) != null) {
+                    out.write(line);
+                    out.write('\n');
+                }
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.out.println("Trace log failed: " + e.getMessage());
+        }
+    }
+}
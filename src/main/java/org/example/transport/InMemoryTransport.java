@@ -0,0 +1,43 @@
+package org.example.transport;
+
+import org.example.rmi.NodeService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* Nodes and coordinators of one JVM calling each other directly, for the harness and benchmarks.
+   Arguments and results are passed by reference instead of copied, so it measures the logic without
+   any serialization or network cost */
+public class InMemoryTransport implements NodeTransport {
+    static final InMemoryTransport INSTANCE = new InMemoryTransport();
+
+    private final Map<Integer, NodeService> nodes = new ConcurrentHashMap<>();
+
+    private InMemoryTransport() {
+    }
+
+    @Override
+    public String name() {
+        return "memory";
+    }
+
+    @Override
+    public Closeable serve(int port, NodeService node) throws IOException {
+        if (nodes.putIfAbsent(port, node) != null) {
+            throw new IOException("Port " + port + " already has an in-memory node");
+        }
+        return () -> nodes.remove(port, node);
+    }
+
+    @Override
+    public NodeService connect(int port) throws IOException {
+        NodeService node = nodes.get(port);
+        if (node == null) {
+            throw new RemoteException("No in-memory node on port " + port);
+        }
+        return node;
+    }
+}
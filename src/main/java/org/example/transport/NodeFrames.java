@@ -0,0 +1,191 @@
+package org.example.transport;
+
+import org.example.protocol.BinaryCodec;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ Frames of the socket transport: a 4 byte length, then the body.
+ Request body:  method name, argument count, arguments
+ Response body: status (0 result, 1 error), then the result or the error message
+ Values are tagged; strings, numbers, booleans, string arrays and string maps have their own
+ encoding, anything else (ChangeSet, Payload, Fragment) falls back to Java serialization, which on
+ reading accepts only those model classes.
+ Lengths and counts are checked against the bytes left in the frame before anything is allocated.
+ */
+class NodeFrames {
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_BOOLEAN = 2;
+    private static final byte TAG_INT = 3;
+    private static final byte TAG_LONG = 4;
+    private static final byte TAG_STRING_ARRAY = 5;
+    private static final byte TAG_STRING_MAP = 6;
+    private static final byte TAG_SERIALIZED = 7;
+
+    private static final ObjectInputFilter SERIALIZED_CLASSES = ObjectInputFilter.Config.createFilter(
+            "org.example.model.ChangeSet;org.example.model.Payload;org.example.model.Fragment;java.lang.String;"
+                    + "maxdepth=4;maxarray=" + BinaryCodec.MAX_FRAME_SIZE + ";!*");
+
+    private NodeFrames() {
+    }
+
+    static void writeRequest(DataOutputStream out, String method, Object[] args) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        DataOutputStream data = new DataOutputStream(body);
+        writeString(data, method);
+        int count = args == null ? 0 : args.length;
+        data.writeByte(count);
+        for (int i = 0; i < count; i++) {
+            writeValue(data, args[i]);
+        }
+        writeFrame(out, body);
+    }
+
+    static void writeResult(DataOutputStream out, Object result) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        DataOutputStream data = new DataOutputStream(body);
+        data.writeByte(OK);
+        writeValue(data, result);
+        writeFrame(out, body);
+    }
+
+    static void writeError(DataOutputStream out, String message) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        DataOutputStream data = new DataOutputStream(body);
+        data.writeByte(ERROR);
+        writeString(data, message);
+        writeFrame(out, body);
+    }
+
+    //Body of the next frame, EOFException when the peer closed the connection between frames
+    static DataInputStream readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > BinaryCodec.MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return new DataInputStream(new ByteArrayInputStream(body));
+    }
+
+    private static void writeFrame(DataOutputStream out, ByteArrayOutputStream body) throws IOException {
+        out.writeInt(body.size());
+        body.writeTo(out);
+        out.flush();
+    }
+
+    static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TAG_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TAG_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof String[]) {
+            String[] values = (String[]) value;
+            out.writeByte(TAG_STRING_ARRAY);
+            out.writeInt(values.length);
+            for (String item : values) {
+                writeString(out, item);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(TAG_STRING_MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, (String) entry.getKey());
+                writeString(out, (String) entry.getValue());
+            }
+        } else {
+            out.writeByte(TAG_SERIALIZED);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+                objects.writeObject(value);
+            }
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+    }
+
+    static Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return readString(in);
+            case TAG_BOOLEAN:
+                return in.readBoolean();
+            case TAG_INT:
+                return in.readInt();
+            case TAG_LONG:
+                return in.readLong();
+            case TAG_STRING_ARRAY:
+                String[] values = new String[readCount(in)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = readString(in);
+                }
+                return values;
+            case TAG_STRING_MAP:
+                int size = readCount(in);
+                Map<String, String> map = new HashMap<>();
+                for (int i = 0; i < size; i++) {
+                    map.put(readString(in), readString(in));
+                }
+                return map;
+            case TAG_SERIALIZED:
+                byte[] bytes = new byte[readCount(in)];
+                in.readFully(bytes);
+                try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    objects.setObjectInputFilter(SERIALIZED_CLASSES);
+                    return objects.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Unknown class in frame: " + e.getMessage());
+                }
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    //Length prefixed UTF-8, -1 for null, writeUTF would cap file content at 64 KB
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        if (length > in.available()) throw new IOException("String of " + length + " bytes exceeds the frame");
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //Frame bodies are in memory, so available() is exactly what is left; every counted item takes at least a byte
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > in.available()) throw new IOException("Count " + count + " exceeds the frame");
+        return count;
+    }
+}
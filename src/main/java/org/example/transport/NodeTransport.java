@@ -0,0 +1,36 @@
+package org.example.transport;
+
+import org.example.rmi.NodeService;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/* How the coordinator and nodes reach a node. The coordinator and node logic only see NodeService,
+   the transport decides whether a call goes over RMI, a framed socket or stays in the process */
+public interface NodeTransport {
+    String name();
+
+    //Make the node reachable on the port until the returned handle is closed
+    Closeable serve(int port, NodeService node) throws IOException;
+
+    //Client for the node on the port, fails when nothing is reachable there
+    NodeService connect(int port) throws IOException;
+
+    //Pick the transport from -Dtransport=rmi|socket|memory, rmi when nothing is set
+    static NodeTransport fromSystemProperty() {
+        return named(System.getProperty("transport", "rmi"));
+    }
+
+    static NodeTransport named(String name) {
+        switch (name.trim().toLowerCase()) {
+            case "rmi":
+                return new RmiTransport();
+            case "socket":
+                return new SocketTransport();
+            case "memory":
+                return InMemoryTransport.INSTANCE;
+            default:
+                throw new IllegalArgumentException("Unknown transport: " + name);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.transport;
+
+import org.example.rmi.NodeService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+
+// The original node protocol: a registry on the node's port holding the exported NodeService
+public class RmiTransport implements NodeTransport {
+    private static final String BINDING = "NodeService";
+
+    @Override
+    public String name() {
+        return "rmi";
+    }
+
+    @Override
+    public Closeable serve(int port, NodeService node) throws IOException {
+        NodeService stub = (NodeService) UnicastRemoteObject.exportObject(node, 0);
+        Registry registry = LocateRegistry.createRegistry(port);
+        registry.rebind(BINDING, stub);
+        return () -> {
+            try {
+                registry.unbind(BINDING);
+            } catch (NotBoundException e) {
+                //already gone
+            }
+            unexport(node);
+            unexport(registry);
+        };
+    }
+
+    //One registry lookup per call, as every caller did before transports were pluggable
+    @Override
+    public NodeService connect(int port) throws IOException {
+        try {
+            Registry registry = LocateRegistry.getRegistry("localhost", port);
+            return (NodeService) registry.lookup(BINDING);
+        } catch (NotBoundException e) {
+            throw new RemoteException("No NodeService bound on port " + port);
+        }
+    }
+
+    private static void unexport(Remote remote) {
+        try {
+            UnicastRemoteObject.unexportObject(remote, true);
+        } catch (NoSuchObjectException e) {
+            //not exported
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package org.example.transport;
+
+import org.example.rmi.NodeService;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.rmi.RemoteException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ NodeService calls as request and response frames (see NodeFrames) over plain TCP, with no registry
+ lookup and no distributed GC. Clients keep up to MAX_IDLE_PER_NODE idle connections per node and
+ run one call at a time on each; a failed call drops every idle connection to that node, so a
+ restarted node is reconnected on the next call. The node serves each connection on its own thread
+ and listens on loopback unless -Dtransport.bindAddress names another interface.
+ */
+public class SocketTransport implements NodeTransport {
+    private static final int MAX_IDLE_PER_NODE = 16;
+    private static final Map<String, Method> METHODS = new HashMap<>();
+
+    private final Map<Integer, Queue<Connection>> idle = new ConcurrentHashMap<>();
+
+    static {
+        for (Method method : NodeService.class.getMethods()) {
+            METHODS.put(method.getName(), method);
+        }
+    }
+
+    private static class Connection implements Closeable {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //closing anyway
+            }
+        }
+    }
+
+    @Override
+    public String name() {
+        return "socket";
+    }
+
+    @Override
+    public Closeable serve(int port, NodeService node) throws IOException {
+        String bindAddress = System.getProperty("transport.bindAddress");
+        ServerSocket serverSocket = new ServerSocket(port, 50,
+                bindAddress == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bindAddress));
+        Set<Socket> open = ConcurrentHashMap.newKeySet();
+        Thread acceptor = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    open.add(socket);
+                    Thread session = new Thread(() -> {
+                        serveConnection(socket, node);
+                        open.remove(socket);
+                    }, "node-socket-" + port);
+                    session.setDaemon(true);
+                    session.start();
+                } catch (IOException e) {
+                    if (!serverSocket.isClosed()) System.out.println("Accept failed on port " + port + ": " + e.getMessage());
+                }
+            }
+        }, "node-accept-" + port);
+        acceptor.start();
+        return () -> {
+            serverSocket.close();
+            for (Socket socket : open) {
+                socket.close();
+            }
+        };
+    }
+
+    private static void serveConnection(Socket socket, NodeService node) {
+        try (Connection connection = new Connection(socket)) {
+            while (true) {
+                DataInputStream request = NodeFrames.readFrame(connection.in);
+                String name = NodeFrames.readString(request);
+                Object[] args = new Object[request.readByte()];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = NodeFrames.readValue(request);
+                }
+
+                Method method = METHODS.get(name);
+                if (method == null) {
+                    NodeFrames.writeError(connection.out, "Unknown node method " + name);
+                    continue;
+                }
+                try {
+                    NodeFrames.writeResult(connection.out, method.invoke(node, args));
+                } catch (InvocationTargetException e) {
+                    //toString, a NullPointerException has no message
+                    NodeFrames.writeError(connection.out, String.valueOf(e.getCause()));
+                } catch (IllegalAccessException | IllegalArgumentException e) {
+                    NodeFrames.writeError(connection.out, "Bad call to " + name + ": " + e.getMessage());
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            //client closed the connection, or the node stopped serving
+        } catch (IOException e) {
+            System.out.println("Node socket session failed: " + e.getMessage());
+        }
+    }
+
+    //Borrowing a connection is the reachability check, a pooled one makes it free
+    @Override
+    public NodeService connect(int port) throws IOException {
+        release(port, borrow(port));
+        return (NodeService) Proxy.newProxyInstance(NodeService.class.getClassLoader(),
+                new Class<?>[]{NodeService.class}, (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.invoke(this, args);
+                    }
+                    return call(port, method.getName(), args);
+                });
+    }
+
+    private Object call(int port, String method, Object[] args) throws RemoteException {
+        Connection connection;
+        try {
+            connection = borrow(port);
+        } catch (IOException e) {
+            throw new RemoteException("Node on port " + port + " is unreachable: " + e.getMessage());
+        }
+
+        try {
+            NodeFrames.writeRequest(connection.out, method, args);
+            DataInputStream response = NodeFrames.readFrame(connection.in);
+            byte status = response.readByte();
+            if (status != NodeFrames.OK) {
+                String error = NodeFrames.readString(response);
+                release(port, connection);
+                throw new RemoteException(error != null ? error : "Call " + method + " to node on port " + port + " failed");
+            }
+            Object result = NodeFrames.readValue(response);
+            release(port, connection);
+            return result;
+        } catch (RemoteException e) {
+            throw e;
+        } catch (IOException e) {
+            connection.close();
+            dropIdle(port);
+            throw new RemoteException("Call " + method + " to node on port " + port + " failed: " + e);
+        }
+    }
+
+    private Connection borrow(int port) throws IOException {
+        Connection connection = idle.computeIfAbsent(port, p -> new ConcurrentLinkedQueue<>()).poll();
+        return connection != null ? connection : new Connection(new Socket("localhost", port));
+    }
+
+    private void release(int port, Connection connection) {
+        Queue<Connection> connections = idle.get(port);
+        if (connections.size() < MAX_IDLE_PER_NODE) {
+            connections.add(connection);
+        } else {
+            connection.close();
+        }
+    }
+
+    private void dropIdle(int port) {
+        Queue<Connection> connections = idle.get(port);
+        Connection connection;
+        while ((connection = connections.poll()) != null) {
+            connection.close();
+        }
+    }
+}
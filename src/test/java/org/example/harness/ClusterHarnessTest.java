@@ -0,0 +1,83 @@
+package org.example.harness;
+
+import org.example.client.CoordinatorConnection;
+import org.example.model.CommandType;
+import org.example.model.FileCommand;
+import org.example.model.User;
+import org.example.service.JwtService;
+import org.example.transport.NodeTransport;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterHarnessTest {
+    private static final String DEPARTMENT = "development";
+    private static final long CONVERGENCE_TIMEOUT_SECONDS = 30;
+
+    @TempDir
+    Path root;
+
+    @BeforeAll
+    static void configure(@TempDir Path traces) {
+        System.setProperty("sync.intervalSeconds", "1");
+        System.setProperty("metrics.port", "0");
+        System.setProperty("trace.sampleRate", "0");
+        System.setProperty("trace.log", traces.resolve("trace.log").toString());
+    }
+
+    //An UPDATE goes through while a node is down, and the restarted node catches up with everything it missed
+    @Test
+    void nodeFailoverAndSyncConvergence() throws Exception {
+        String token = new JwtService().issue(new User("harness", DEPARTMENT, "Employee", ""));
+        try (ClusterHarness harness = new ClusterHarness(root, Collections.singletonMap(DEPARTMENT, 2),
+                NodeTransport.named("memory"))) {
+            harness.start();
+            try (CoordinatorConnection connection = harness.connect()) {
+                assertSaved(connection.request(command(CommandType.ADD, "before.txt", "first", token)));
+
+                int victim = harness.nodePorts(DEPARTMENT).get(0);
+                harness.killNode(victim);
+                assertSaved(connection.request(command(CommandType.UPDATE, "before.txt", "second", token)));
+                assertSaved(connection.request(command(CommandType.ADD, "during.txt", "written while down", token)));
+
+                harness.restartNode(victim);
+                assertSaved(connection.request(command(CommandType.ADD, "after.txt", "third", token)));
+            }
+
+            List<String> files = Arrays.asList("before.txt", "during.txt", "after.txt");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CONVERGENCE_TIMEOUT_SECONDS);
+            while (!everyNodeHas(harness, files)) {
+                assertTrue(System.nanoTime() < deadline, "nodes did not converge within " + CONVERGENCE_TIMEOUT_SECONDS + "s");
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private static boolean everyNodeHas(ClusterHarness harness, List<String> files) throws IOException {
+        for (int port : harness.allNodePorts()) {
+            for (String file : files) {
+                if (!harness.nodeHas(port, file)) return false;
+            }
+        }
+        return true;
+    }
+
+    private static void assertSaved(Object result) {
+        assertTrue(String.valueOf(result).startsWith("File saved"), String.valueOf(result));
+    }
+
+    private static FileCommand command(CommandType type, String fileName, String content, String token) {
+        FileCommand command = new FileCommand(type, fileName, DEPARTMENT, content, "harness");
+        command.setAuthToken(token);
+        return command;
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.node;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReedSolomonTest {
+    //Every choice of k surviving shards out of k+m must give back the original bytes
+    private static void decodesFromEveryKSubset(int k, int m, int length) {
+        byte[] data = new byte[length];
+        new Random(k * 31L + m).nextBytes(data);
+        ReedSolomon codec = new ReedSolomon(k, m);
+        byte[][] shards = codec.encode(data);
+        assertEquals(k + m, shards.length);
+
+        int subsets = 0;
+        for (int mask = 0; mask < 1 << (k + m); mask++) {
+            if (Integer.bitCount(mask) != k) continue;
+            byte[][] survivors = new byte[k + m][];
+            for (int i = 0; i < k + m; i++) {
+                if ((mask & 1 << i) != 0) survivors[i] = shards[i].clone();
+            }
+            assertArrayEquals(data, codec.decode(survivors, length), "shards " + Integer.toBinaryString(mask));
+            subsets++;
+        }
+        assertTrue(subsets > 0);
+    }
+
+    @Test
+    void fourPlusTwo() {
+        decodesFromEveryKSubset(4, 2, 10_003);
+    }
+
+    @Test
+    void threePlusThree() {
+        decodesFromEveryKSubset(3, 3, 4_097);
+    }
+
+    @Test
+    void tenPlusFour() {
+        decodesFromEveryKSubset(10, 4, 1_001);
+    }
+
+    @Test
+    void seventeenPlusThree() {
+        decodesFromEveryKSubset(17, 3, 513);
+    }
+
+    @Test
+    void lengthNotAMultipleOfTheShardCount() {
+        decodesFromEveryKSubset(4, 2, 1);
+        decodesFromEveryKSubset(4, 2, 0);
+    }
+}
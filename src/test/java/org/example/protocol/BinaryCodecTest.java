@@ -0,0 +1,117 @@
+package org.example.protocol;
+
+import org.example.model.CommandResponse;
+import org.example.model.CommandType;
+import org.example.model.FileCommand;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCodecTest {
+    private static final int[] INTS = {0, 1, -1, 63, -64, 64, -65, 127, 128, Integer.MAX_VALUE, Integer.MIN_VALUE,
+            Integer.MAX_VALUE - 1, Integer.MIN_VALUE + 1};
+    private static final long[] LONGS = {0, 1, -1, 127, 128, Long.MAX_VALUE, Long.MIN_VALUE};
+
+    @Test
+    void commandRoundTripsNegativeAndBoundaryValues() throws IOException {
+        for (int limit : INTS) {
+            for (long number : LONGS) {
+                FileCommand command = new FileCommand(CommandType.values()[0], "a.txt", "dept", "content", "alice");
+                command.setRequestId(number);
+                command.setLimit(limit);
+                command.setVersion(number);
+                command.setCursor("");
+
+                for (boolean compress : new boolean[]{false, true}) {
+                    FileCommand decoded = BinaryCodec.decodeCommand(BinaryCodec.encodeCommand(command, compress));
+                    assertEquals(limit, decoded.getLimit());
+                    assertEquals(number, decoded.getRequestId());
+                    assertEquals(number, decoded.getVersion());
+                    assertEquals("", decoded.getCursor());
+                    assertNull(decoded.getAuthToken());
+                    assertEquals("content", decoded.getContent());
+                }
+            }
+        }
+    }
+
+    @Test
+    void everyCommandTypeRoundTrips() throws IOException {
+        for (CommandType type : CommandType.values()) {
+            FileCommand command = new FileCommand(type, null, null, null, null);
+            assertEquals(type, BinaryCodec.decodeCommand(BinaryCodec.encodeCommand(command)).getType());
+        }
+    }
+
+    @Test
+    void responseRoundTripsArrays() throws IOException {
+        String[] names = {"a", "", null, "\u00e9"};
+        CommandResponse response = BinaryCodec.decodeResponse(
+                BinaryCodec.encodeResponse(new CommandResponse(-1, names)));
+        assertEquals(-1, response.getRequestId());
+        assertArrayEquals(names, (String[]) response.getResult());
+    }
+
+    @Test
+    void responseKeepsFailureApartFromResult() throws IOException {
+        CommandResponse failed = BinaryCodec.decodeResponse(
+                BinaryCodec.encodeResponse(CommandResponse.failure(7, "Coordinator busy")));
+        assertTrue(failed.isFailed());
+        assertEquals("Coordinator busy", failed.getResult());
+        assertFalse(BinaryCodec.decodeResponse(BinaryCodec.encodeResponse(new CommandResponse(7, "token"))).isFailed());
+    }
+
+    @Test
+    void rejectsNegativeOrdinal() {
+        //version, flags, request id 0, ordinal -1 as a 64 bit varint
+        byte[] frame = {BinaryCodec.VERSION, 0, 0, -1, -1, -1, -1, -1, -1, -1, -1, -1, 1};
+        assertThrows(IOException.class, () -> BinaryCodec.decodeCommand(frame));
+    }
+
+    @Test
+    void rejectsOrdinalPastTheLastType() {
+        byte[] frame = {BinaryCodec.VERSION, 0, 0, (byte) CommandType.values().length, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+        assertThrows(IOException.class, () -> BinaryCodec.decodeCommand(frame));
+    }
+
+    @Test
+    void rejectsNegativeStringLength() {
+        //ordinal 0, then a file name length of -1 as a 32 bit varint
+        byte[] frame = {BinaryCodec.VERSION, 0, 0, 0, -1, -1, -1, -1, 15, 0, 0, 0, 0, 0, 0, 0, 0};
+        assertThrows(IOException.class, () -> BinaryCodec.decodeCommand(frame));
+    }
+
+    @Test
+    void rejectsArrayCountBeyondTheFrame() {
+        //string array tag with a count of Integer.MAX_VALUE and no items
+        byte[] frame = {BinaryCodec.VERSION, 0, 3, -1, -1, -1, -1, 7};
+        assertThrows(IOException.class, () -> BinaryCodec.decodeResponse(frame));
+    }
+
+    @Test
+    void deflatedContentRoundTrips() throws IOException {
+        String content = "line of text\n".repeat(10_000);
+        FileCommand command = new FileCommand(CommandType.values()[0], "a.txt", "dept", content, "alice");
+        assertEquals(content, BinaryCodec.decodeCommand(BinaryCodec.encodeCommand(command, true)).getContent());
+    }
+
+    @Test
+    void rejectsDeflatedContentClaimingMoreThanAFrame() {
+        //flags deflated, ordinal 0, two null strings, then a raw length of 2^31 - 1 before a tiny body
+        byte[] frame = {BinaryCodec.VERSION, 1, 0, 0, 0, 0, -1, -1, -1, -1, 7, 3, 0x03, 0x00, 0, 0, 0, 0, 0, 0, 0};
+        assertThrows(IOException.class, () -> BinaryCodec.decodeCommand(frame));
+    }
+
+    @Test
+    void rejectsTruncatedFrames() throws IOException {
+        FileCommand command = new FileCommand(CommandType.values()[0], "a.txt", "dept", "content", "alice");
+        byte[] frame = BinaryCodec.encodeCommand(command);
+        for (int length = 0; length < frame.length; length++) {
+            byte[] truncated = Arrays.copyOf(frame, length);
+            assertThrows(IOException.class, () -> BinaryCodec.decodeCommand(truncated));
+        }
+    }
+}
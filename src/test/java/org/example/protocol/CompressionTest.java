@@ -0,0 +1,49 @@
+package org.example.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionTest {
+    private static byte[] compressible(int size) {
+        byte[] raw = new byte[size];
+        for (int i = 0; i < size; i++) {
+            raw[i] = (byte) ('a' + i % 7);
+        }
+        return raw;
+    }
+
+    @Test
+    void roundTrips() throws IOException {
+        byte[] raw = compressible(200_000);
+        byte[] deflated = Compression.deflate(raw);
+        assertNotNull(deflated);
+        assertArrayEquals(raw, Compression.inflate(deflated, raw.length));
+    }
+
+    @Test
+    void rejectsClaimedLengthAboveTheLimit() {
+        byte[] deflated = Compression.deflate(compressible(4096));
+        assertThrows(IOException.class, () -> Compression.inflate(deflated, BinaryCodec.MAX_FRAME_SIZE + 1, BinaryCodec.MAX_FRAME_SIZE));
+        assertThrows(IOException.class, () -> Compression.inflate(deflated, -1));
+    }
+
+    @Test
+    void rejectsPayloadShorterOrLongerThanClaimed() {
+        byte[] raw = compressible(4096);
+        byte[] deflated = Compression.deflate(raw);
+        assertThrows(IOException.class, () -> Compression.inflate(deflated, Integer.MAX_VALUE - 8));
+        assertThrows(IOException.class, () -> Compression.inflate(deflated, raw.length - 1));
+    }
+
+    @Test
+    void rejectsCorruptInput() {
+        byte[] deflated = Compression.deflate(compressible(4096));
+        byte[] corrupt = Arrays.copyOf(deflated, deflated.length);
+        corrupt[0] ^= 0x7F;
+        assertThrows(IOException.class, () -> Compression.inflate(corrupt, 4096));
+    }
+}
@@ -0,0 +1,54 @@
+package org.example.repository;
+
+import org.example.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserRepositoryTest {
+    @TempDir
+    Path directory;
+
+    private static User user(String name) {
+        return new User(name, "qa", "Employee", "token-" + name);
+    }
+
+    //Compaction by one repository must keep what another added behind its back, and the other's later appends too
+    @Test
+    void compactionKeepsUsersOfAnotherRepository() throws IOException {
+        String snapshot = directory.resolve("users.json").toString();
+        try (UserRepository coordinator = new UserRepository(snapshot);
+             UserRepository client = new UserRepository(snapshot)) {
+            coordinator.addUser(user("alice"));
+            client.addUser(user("bob"));
+
+            coordinator.compact();
+            client.addUser(user("carol"));
+            client.compact();
+            coordinator.addUser(user("dave"));
+        }
+
+        try (UserRepository loaded = new UserRepository(snapshot)) {
+            for (String name : new String[]{"alice", "bob", "carol", "dave"}) {
+                assertNotNull(loaded.getUserByUsername(name), name);
+            }
+            assertEquals(4, loaded.getAllUsers().size());
+        }
+    }
+
+    @Test
+    void compactionPicksUpUsersOfAnotherRepository() throws IOException {
+        String snapshot = directory.resolve("users.json").toString();
+        try (UserRepository first = new UserRepository(snapshot);
+             UserRepository second = new UserRepository(snapshot)) {
+            second.addUser(user("erin"));
+            assertNull(first.getUserByToken("token-erin"));
+            first.compact();
+            assertNotNull(first.getUserByToken("token-erin"));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.example.transport;
+
+import org.example.model.ChangeSet;
+import org.example.model.Fragment;
+import org.example.model.Payload;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeFramesTest {
+    private static DataInputStream frameOf(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NodeFrames.writeValue(new DataOutputStream(bytes), value);
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    void modelClassesRoundTrip() throws IOException {
+        ChangeSet changes = (ChangeSet) NodeFrames.readValue(frameOf(new ChangeSet(3, 7, new String[]{"a", "b"})));
+        assertEquals(7, changes.getSequence());
+        assertArrayEquals(new String[]{"a", "b"}, changes.getNames());
+
+        Payload payload = (Payload) NodeFrames.readValue(frameOf(Payload.of("text", false)));
+        assertEquals("text", payload.text());
+
+        Fragment[] fragments = {new Fragment(1, 0, 2, 1, 3, new byte[]{1, 2})};
+        Fragment[] read = (Fragment[]) NodeFrames.readValue(frameOf(fragments));
+        assertArrayEquals(new byte[]{1, 2}, read[0].getData());
+    }
+
+    @Test
+    void rejectsOtherSerializedClasses() {
+        ArrayList<String> list = new ArrayList<>(Arrays.asList("a", "b"));
+        assertThrows(InvalidClassException.class, () -> NodeFrames.readValue(frameOf(list)));
+    }
+
+    @Test
+    void rejectsCountsBeyondTheFrame() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(5);
+        out.writeInt(Integer.MAX_VALUE);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertThrows(IOException.class, () -> NodeFrames.readValue(in));
+
+        ByteArrayOutputStream string = new ByteArrayOutputStream();
+        DataOutputStream stringOut = new DataOutputStream(string);
+        stringOut.writeByte(1);
+        stringOut.writeInt(1 << 30);
+        DataInputStream stringIn = new DataInputStream(new ByteArrayInputStream(string.toByteArray()));
+        assertThrows(IOException.class, () -> NodeFrames.readValue(stringIn));
+    }
+}
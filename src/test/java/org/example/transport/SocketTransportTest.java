@@ -0,0 +1,41 @@
+package org.example.transport;
+
+import org.example.rmi.NodeService;
+import org.junit.jupiter.api.Test;
+
+import java.io.Closeable;
+import java.lang.reflect.Proxy;
+import java.net.ServerSocket;
+import java.rmi.RemoteException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SocketTransportTest {
+    //A node whose hasFile throws an exception without a message and whose getSyncList works
+    private static NodeService failingNode() {
+        return (NodeService) Proxy.newProxyInstance(NodeService.class.getClassLoader(), new Class<?>[]{NodeService.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getSyncList")) return new String[]{"a.txt"};
+                    throw new NullPointerException();
+                });
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Test
+    void failedCallsThrowEvenWithoutAMessage() throws Exception {
+        SocketTransport transport = new SocketTransport();
+        int port = freePort();
+        try (Closeable endpoint = transport.serve(port, failingNode())) {
+            NodeService node = transport.connect(port);
+            RemoteException error = assertThrows(RemoteException.class, () -> node.hasFile("a.txt", null));
+            assertTrue(error.getMessage().contains("NullPointerException"), error.getMessage());
+            //The connection stays usable after an error response
+            assertArrayEquals(new String[]{"a.txt"}, node.getSyncList());
+        }
+    }
+}